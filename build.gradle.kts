@@ -7,6 +7,8 @@ plugins {
     id("pl.allegro.tech.build.axion-release") version "1.21.2"
     id("com.adarshr.test-logger") version "4.0.0"
     id("io.github.gradle-nexus.publish-plugin") version "2.0.0"
+    id("me.champeau.jmh") version "0.7.3"
+    id("org.graalvm.buildtools.native") version "0.10.6"
 }
 
 repositories {
@@ -35,10 +37,83 @@ tasks.named<JavaCompile>("compileJava") {
     options.release.set(8)
 }
 
+// classes replaced on Java 21 and later, packaged as a multi-release jar
+val java21: SourceSet by sourceSets.creating {
+    java.srcDir("src/main/java21")
+    compileClasspath += sourceSets.main.get().output + sourceSets.main.get().compileClasspath
+}
+
+tasks.named<JavaCompile>(java21.compileJavaTaskName) {
+    options.release.set(21)
+}
+
+// tests of the multi-release jar on Java 21, where the classes under META-INF/versions/21 replace those of src/main/java
+val java21Test: SourceSet by sourceSets.creating {
+    java.srcDir("src/test/java21")
+    compileClasspath += sourceSets.main.get().output
+}
+
+configurations[java21Test.implementationConfigurationName].extendsFrom(configurations.testImplementation.get())
+configurations[java21Test.runtimeOnlyConfigurationName].extendsFrom(configurations.testRuntimeOnly.get())
+
+tasks.named<JavaCompile>(java21Test.compileJavaTaskName) {
+    options.release.set(21)
+}
+
+val java21TestTask = tasks.register<Test>("java21Test") {
+    group = "verification"
+    description = "Runs the Java 21 tests against the multi-release jar."
+    javaLauncher.set(javaToolchains.launcherFor {
+        languageVersion.set(JavaLanguageVersion.of(21))
+    })
+    testClassesDirs = java21Test.output.classesDirs
+    classpath = files(tasks.jar) + java21Test.runtimeClasspath + configurations.runtimeClasspath.get()
+}
+
+// bulk scanner command line tool, see BulkScanner, not part of the published jar
+val cli: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output + sourceSets.main.get().compileClasspath
+    runtimeClasspath += sourceSets.main.get().output + sourceSets.main.get().runtimeClasspath
+}
+
+val cliTest: SourceSet by sourceSets.creating {
+    compileClasspath += cli.output + cli.compileClasspath
+    runtimeClasspath += cli.output + cli.runtimeClasspath
+}
+
+configurations[cliTest.implementationConfigurationName].extendsFrom(configurations.testImplementation.get())
+configurations[cliTest.runtimeOnlyConfigurationName].extendsFrom(configurations.testRuntimeOnly.get())
+
+val cliTestTask = tasks.register<Test>("cliTest") {
+    group = "verification"
+    description = "Runs the bulk scanner tests."
+    testClassesDirs = cliTest.output.classesDirs
+    classpath = cliTest.runtimeClasspath
+}
+
+tasks.named("check") {
+    dependsOn(java21TestTask, cliTestTask)
+}
+
+tasks.register<JavaExec>("scan") {
+    group = "application"
+    description = "Scans svg files, directories and ZIP/JAR archives in parallel, -PscanArgs=\"[options] <paths>\"."
+    classpath = cli.runtimeClasspath
+    mainClass.set("com.github.bgalek.security.svg.cli.BulkScanner")
+    val scanArgs = providers.gradleProperty("scanArgs")
+    argumentProviders.add(CommandLineArgumentProvider {
+        scanArgs.orNull?.split(" ")?.filter { it.isNotBlank() } ?: emptyList()
+    })
+}
+
 tasks {
     jar {
         manifest {
-            attributes(mapOf("Implementation-Title" to project.name, "Implementation-Version" to project.version))
+            attributes(mapOf("Implementation-Title" to project.name, "Implementation-Version" to project.version,
+                    "Multi-Release" to "true"))
+        }
+        into("META-INF/versions/21") {
+            from(java21.output)
         }
     }
 }
@@ -50,6 +125,102 @@ tasks.withType<Test> {
     }
 }
 
+// ./gradlew nativeTest runs the tests in a native image; needs a GraalVM JDK, see GRAALVM_HOME.
+// ./gradlew -Pagent test metadataCopy regenerates the reachability metadata of the library with the tracing agent,
+// the native job of the build workflow checks that it is committed and that nativeTest passes with it.
+graalvmNative {
+    agent {
+        defaultMode.set("standard")
+        callerFilterFiles.from("src/test/native-image/caller-filter.json")
+        metadataCopy {
+            inputTaskNames.add("test")
+            outputDirectories.add("src/main/resources/META-INF/native-image/com.github.bgalek.security.svg/safe-svg")
+            mergeWithExisting.set(false)
+        }
+    }
+    binaries {
+        named("test") {
+            resources.autodetect()
+        }
+    }
+}
+
+sourceSets {
+    named("jmh") {
+        resources.srcDir("src/test/resources")
+    }
+}
+
+jmh {
+    jmhVersion = "1.37"
+    profilers = listOf("gc")
+    resultFormat = "JSON"
+    resultsFile = layout.buildDirectory.file("results/jmh/results.json")
+    providers.gradleProperty("jmhIncludes").orNull?.let { includes = listOf(it) }
+}
+
+val jmhResults = layout.buildDirectory.file("results/jmh/results.json")
+// kept under build/ so a local baseline is never committed by accident, -PjmhBaseline keeps one across clean builds
+val jmhBaseline = providers.gradleProperty("jmhBaseline").map { file(it) }
+    .orElse(layout.buildDirectory.file("results/jmh/baseline.json").map { it.asFile })
+
+tasks.register("jmhSaveBaseline") {
+    group = "benchmark"
+    description = "Stores the latest JMH results as the baseline for jmhCompareBaseline (-PjmhBaseline=<file>)."
+    val results = jmhResults
+    val baseline = jmhBaseline
+    doLast {
+        results.get().asFile.copyTo(baseline.get(), overwrite = true)
+    }
+}
+
+tasks.register("jmhCompareBaseline") {
+    group = "benchmark"
+    description = "Compares the latest JMH results with the baseline, fails on regressions above " +
+            "-PjmhRegressionThreshold (a fraction, 0.10 by default)."
+    val results = jmhResults
+    val baseline = jmhBaseline
+    val threshold = providers.gradleProperty("jmhRegressionThreshold").map { it.toDouble() }.orElse(0.10)
+    doLast {
+        // benchmark, mode and parameters -> (score, higher is better)
+        fun scores(file: File): Map<String, Pair<Double, Boolean>> {
+            if (!file.exists()) throw GradleException("$file not found, run ./gradlew jmh (and jmhSaveBaseline) first")
+            @Suppress("UNCHECKED_CAST")
+            val runs = groovy.json.JsonSlurper().parse(file) as List<Map<String, Any?>>
+            return runs.flatMap { run ->
+                val params = (run["params"] as Map<*, *>?)?.entries?.map { "${it.key}=${it.value}" }?.sorted()?.joinToString(",") ?: ""
+                val key = "${run["benchmark"]} ${run["mode"]} [$params]"
+                val higherIsBetter = run["mode"] == "thrpt"
+                @Suppress("UNCHECKED_CAST")
+                val metric = run["primaryMetric"] as Map<String, Any?>
+                val percentiles = metric["scorePercentiles"] as Map<*, *>?
+                listOfNotNull(
+                    key to ((metric["score"] as Number).toDouble() to higherIsBetter),
+                    (percentiles?.get("99.0") as Number?)?.takeIf { run["mode"] == "sample" }
+                        ?.let { "$key p99" to (it.toDouble() to false) }
+                )
+            }.toMap()
+        }
+
+        val current = scores(results.get().asFile)
+        val previous = scores(baseline.get())
+        val regressions = mutableListOf<String>()
+        logger.lifecycle(String.format("%-120s %14s %14s %9s", "benchmark", "baseline", "current", "change"))
+        current.forEach { (key, score) ->
+            val (value, higherIsBetter) = score
+            val baselineValue = previous[key]?.first ?: return@forEach
+            val change = if (higherIsBetter) baselineValue / value - 1 else value / baselineValue - 1
+            val line = String.format("%-120s %14.3f %14.3f %+8.1f%%", key, baselineValue, value, -change * 100)
+            logger.lifecycle(line)
+            if (change > threshold.get()) regressions.add(line)
+        }
+        if (regressions.isNotEmpty()) {
+            throw GradleException("${regressions.size} benchmark(s) regressed by more than " +
+                    "${(threshold.get() * 100).toInt()}%:\n${regressions.joinToString("\n")}")
+        }
+    }
+}
+
 tasks.jacocoTestReport {
     reports {
         xml.required = true
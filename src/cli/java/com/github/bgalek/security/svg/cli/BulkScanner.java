@@ -0,0 +1,213 @@
+package com.github.bgalek.security.svg.cli;
+
+import com.github.bgalek.security.svg.SvgSecurityValidator;
+import com.github.bgalek.security.svg.SvgSecurityValidatorBuilder;
+import com.github.bgalek.security.svg.ValidationStatistics;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Scans directory trees, svg files and ZIP/JAR archives of them with {@link SvgSecurityValidator}, writing
+ * one JSON line per file or archive entry and throughput statistics at the end:
+ * <pre>
+ * ./gradlew scan -PscanArgs="--threads 16 --output report.jsonl /srv/assets icons.zip"
+ * </pre>
+ * One thread walks the inputs and hands files over to a worker per core through a bounded queue, so the
+ * walk never runs far ahead of the workers and memory use does not depend on the size of the tree. Every
+ * worker builds its own validator and reuses its own read buffer, see {@link ScanWorker}.
+ * <p>
+ * Exits with 0 when everything is clean, 1 when violations were found, 2 when some files could not be
+ * validated and 64 on invalid arguments.
+ */
+public final class BulkScanner {
+    static final String USAGE = "Usage: BulkScanner [--threads <n>] [--output <file>] [--syntax-validation] [--single-pass]"
+            + " [--fail-fast] [--time-budget <millis>] <directory|file|archive>...";
+    private static final int QUEUED_TASKS_PER_WORKER = 64;
+
+    private final List<Path> inputs = new ArrayList<>();
+    private final SvgSecurityValidatorBuilder validatorBuilder = SvgSecurityValidator.builder();
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private Path output;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        System.exit(scan(args));
+    }
+
+    /**
+     * @return the exit code
+     */
+    static int scan(String... args) throws IOException, InterruptedException {
+        BulkScanner scanner = new BulkScanner();
+        try {
+            scanner.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            return 64;
+        }
+        return scanner.run();
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads":
+                    threads = Integer.parseInt(value(args, ++i));
+                    if (threads < 1) throw new IllegalArgumentException("--threads must be positive: " + threads);
+                    break;
+                case "--output":
+                    output = Paths.get(value(args, ++i));
+                    break;
+                case "--syntax-validation":
+                    validatorBuilder.withSyntaxValidation();
+                    break;
+                case "--single-pass":
+                    validatorBuilder.withSinglePassValidation();
+                    break;
+                case "--fail-fast":
+                    validatorBuilder.withFailFast();
+                    break;
+                case "--time-budget":
+                    validatorBuilder.withTimeBudget(Duration.ofMillis(Long.parseLong(value(args, ++i))));
+                    break;
+                default:
+                    if (args[i].startsWith("--")) throw new IllegalArgumentException("Unknown option: " + args[i]);
+                    inputs.add(Paths.get(args[i]));
+            }
+        }
+        if (inputs.isEmpty()) throw new IllegalArgumentException("Nothing to scan");
+    }
+
+    private static String value(String[] args, int index) {
+        if (index >= args.length) throw new IllegalArgumentException(args[index - 1] + " needs a value");
+        return args[index];
+    }
+
+    private int run() throws IOException, InterruptedException {
+        ValidationStatistics statistics = new ValidationStatistics();
+        validatorBuilder.withInstrumentation(statistics);
+        Writer writer = output == null ? new OutputStreamWriter(System.out, StandardCharsets.UTF_8)
+                : Files.newBufferedWriter(output, StandardCharsets.UTF_8);
+        JsonLinesReport report = new JsonLinesReport(new BufferedWriter(writer, 1 << 16));
+        BlockingQueue<ScanTask> tasks = new ArrayBlockingQueue<>(threads * QUEUED_TASKS_PER_WORKER);
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(new ScanWorker(validatorBuilder.build(), tasks, report), "svg-scanner-" + i);
+            worker.start();
+            workers.add(worker);
+        }
+        long start = System.nanoTime();
+        try {
+            for (Path input : inputs) {
+                walk(input, tasks, report);
+            }
+        } finally {
+            for (int i = 0; i < threads; i++) {
+                tasks.put(ScanTask.END);
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            report.close();
+        }
+        report.printSummary(System.err, System.nanoTime() - start, statistics);
+        return report.exitCode();
+    }
+
+    private static void walk(Path input, BlockingQueue<ScanTask> tasks, JsonLinesReport report) throws IOException, InterruptedException {
+        Files.walkFileTree(input, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                try {
+                    if (isArchive(file)) {
+                        submitArchive(file, tasks, report);
+                    } else if (isSvg(file.toString()) || file.equals(input)) {
+                        tasks.put(worker -> worker.scanFile(file, attributes.size()));
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return FileVisitResult.TERMINATE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException failure) {
+                report.failure(file.toString(), null, -1, 0, failure);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        if (Thread.currentThread().isInterrupted()) throw new InterruptedException();
+    }
+
+    /**
+     * Hands the archive's entries over one by one, the archive is closed once the last of them is scanned.
+     */
+    private static void submitArchive(Path file, BlockingQueue<ScanTask> tasks, JsonLinesReport report) throws InterruptedException {
+        ZipFile archive;
+        try {
+            archive = new ZipFile(file.toFile());
+        } catch (IOException e) {
+            report.failure(file.toString(), null, -1, 0, e);
+            return;
+        }
+        // the walk holds one reference until every entry is queued
+        AtomicInteger references = new AtomicInteger(1);
+        try {
+            Enumeration<? extends ZipEntry> entries = archive.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (entry.isDirectory() || !isSvg(entry.getName())) continue;
+                references.incrementAndGet();
+                tasks.put(worker -> {
+                    try {
+                        worker.scanEntry(file, archive, entry);
+                    } finally {
+                        release(archive, references);
+                    }
+                });
+            }
+        } finally {
+            release(archive, references);
+        }
+    }
+
+    private static void release(ZipFile archive, AtomicInteger references) {
+        if (references.decrementAndGet() > 0) return;
+        try {
+            archive.close();
+        } catch (IOException e) {
+            // every entry has been read already
+        }
+    }
+
+    private static boolean isArchive(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".zip") || name.endsWith(".jar");
+    }
+
+    private static boolean isSvg(String name) {
+        String lowerCase = name.toLowerCase(Locale.ROOT);
+        return lowerCase.endsWith(".svg") || lowerCase.endsWith(".svgz");
+    }
+}
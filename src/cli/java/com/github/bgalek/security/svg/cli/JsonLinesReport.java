@@ -0,0 +1,115 @@
+package com.github.bgalek.security.svg.cli;
+
+import com.github.bgalek.security.svg.ValidationInstrumentation.Stage;
+import com.github.bgalek.security.svg.ValidationResult;
+import com.github.bgalek.security.svg.ValidationStatistics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Writes a JSON object per line for every file or archive entry scanned, from many workers at once:
+ * <pre>
+ * {"path":"icons.zip","entry":"a.svg","size":1520,"nanos":81200,"verdict":"violations","offendingElements":["script"]}
+ * {"path":"b.svg","size":-1,"nanos":1200,"verdict":"failed","error":"java.nio.file.AccessDeniedException: b.svg"}
+ * </pre>
+ * Lines are built by the reporting worker and written whole, their order follows completion.
+ */
+final class JsonLinesReport implements Closeable {
+    private final Writer output;
+    private final LongAdder clean = new LongAdder();
+    private final LongAdder violations = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    // guarded by output, once writing failed the rest is dropped and the failure thrown on close
+    private IOException writeFailure;
+
+    JsonLinesReport(Writer output) {
+        this.output = output;
+    }
+
+    void result(String path, String entry, long size, long nanos, ValidationResult result) {
+        (result.hasViolations() ? violations : clean).increment();
+        if (size > 0) bytes.add(size);
+        StringBuilder line = start(path, entry, size, nanos)
+                .append(",\"verdict\":\"").append(result.hasViolations() ? "violations" : "clean")
+                .append("\",\"offendingElements\":[");
+        String separator = "";
+        for (String offendingElement : result.getOffendingElements()) {
+            string(line.append(separator), offendingElement);
+            separator = ",";
+        }
+        write(line.append("]}"));
+    }
+
+    void failure(String path, String entry, long size, long nanos, Exception failure) {
+        failed.increment();
+        StringBuilder line = start(path, entry, size, nanos).append(",\"verdict\":\"failed\",\"error\":");
+        write(string(line, failure.toString()).append('}'));
+    }
+
+    private static StringBuilder start(String path, String entry, long size, long nanos) {
+        StringBuilder line = string(new StringBuilder(128).append("{\"path\":"), path);
+        if (entry != null) string(line.append(",\"entry\":"), entry);
+        return line.append(",\"size\":").append(size).append(",\"nanos\":").append(nanos);
+    }
+
+    private static StringBuilder string(StringBuilder line, String value) {
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                line.append('\\').append(c);
+            } else if (c < 0x20) {
+                line.append(String.format("\\u%04x", (int) c));
+            } else {
+                line.append(c);
+            }
+        }
+        return line.append('"');
+    }
+
+    private void write(StringBuilder line) {
+        line.append('\n');
+        synchronized (output) {
+            if (writeFailure != null) return;
+            try {
+                output.append(line);
+            } catch (IOException e) {
+                writeFailure = e;
+            }
+        }
+    }
+
+    int exitCode() {
+        if (failed.sum() > 0) return 2;
+        return violations.sum() > 0 ? 1 : 0;
+    }
+
+    void printSummary(PrintStream out, long nanos, ValidationStatistics statistics) {
+        long files = clean.sum() + violations.sum() + failed.sum();
+        double seconds = Math.max(nanos, 1) / 1e9;
+        out.printf(Locale.ROOT, "Scanned %d files (%d clean, %d with violations, %d failed), %.1f MiB in %.2f s%n",
+                files, clean.sum(), violations.sum(), failed.sum(), bytes.sum() / 1048576.0, seconds);
+        out.printf(Locale.ROOT, "Throughput: %.0f files/s, %.1f MiB/s%n", files / seconds, bytes.sum() / 1048576.0 / seconds);
+        for (Stage stage : Stage.values()) {
+            long count = statistics.getStageCount(stage);
+            if (count == 0) continue;
+            out.printf(Locale.ROOT, "  %-17s %10d runs %10.1f ms total %10.1f us mean%n", stage, count,
+                    statistics.getStageNanos(stage) / 1e6, statistics.getStageNanos(stage) / 1e3 / count);
+        }
+        statistics.getOffendingElementCounts().forEach((name, count) -> out.printf(Locale.ROOT, "  %-17s %10d files%n", name, count));
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (output) {
+            output.close();
+            if (writeFailure != null) throw writeFailure;
+        }
+    }
+}
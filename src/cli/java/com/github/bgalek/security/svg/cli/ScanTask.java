@@ -0,0 +1,11 @@
+package com.github.bgalek.security.svg.cli;
+
+/**
+ * A file or archive entry to scan, run by whichever worker takes it from the queue.
+ */
+interface ScanTask {
+    ScanTask END = worker -> {
+    };
+
+    void run(ScanWorker worker);
+}
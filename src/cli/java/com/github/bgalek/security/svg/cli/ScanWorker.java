@@ -0,0 +1,90 @@
+package com.github.bgalek.security.svg.cli;
+
+import com.github.bgalek.security.svg.SvgSecurityValidator;
+import com.github.bgalek.security.svg.ValidationResult;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Takes tasks from the queue until {@link ScanTask#END}, with a validator of its own. Files are read
+ * through a {@link FileChannel} into a buffer the worker keeps reusing, or memory-mapped from
+ * {@value #MAPPED_FILE_SIZE} bytes on. With {@code --single-pass} the validator decodes them in place,
+ * otherwise they are decoded to a string for the sanitizer. Archive entries are validated while they are
+ * inflated, large ones are replayed to the sanitizer from a temporary file rather than held in memory.
+ */
+final class ScanWorker implements Runnable {
+    // mapping costs a system call and the mapping lives until the buffer is collected, small files are read
+    private static final int MAPPED_FILE_SIZE = 1 << 20;
+
+    private final SvgSecurityValidator validator;
+    private final BlockingQueue<ScanTask> tasks;
+    private final JsonLinesReport report;
+    private ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+
+    ScanWorker(SvgSecurityValidator validator, BlockingQueue<ScanTask> tasks, JsonLinesReport report) {
+        this.validator = validator;
+        this.tasks = tasks;
+        this.report = report;
+    }
+
+    @Override
+    public void run() {
+        try {
+            for (ScanTask task = tasks.take(); task != ScanTask.END; task = tasks.take()) {
+                task.run(this);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    void scanFile(Path file, long size) {
+        long start = System.nanoTime();
+        try {
+            ValidationResult result;
+            if (size > Integer.MAX_VALUE) {
+                result = validator.validate(file);
+            } else {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                    result = validator.validate(size >= MAPPED_FILE_SIZE
+                            ? channel.map(FileChannel.MapMode.READ_ONLY, 0, size) : read(channel, (int) size));
+                }
+            }
+            report.result(file.toString(), null, size, System.nanoTime() - start, result);
+        } catch (IOException | RuntimeException e) {
+            report.failure(file.toString(), null, size, System.nanoTime() - start, e);
+        }
+    }
+
+    void scanEntry(Path archive, ZipFile zipFile, ZipEntry entry) {
+        long start = System.nanoTime();
+        try (InputStream content = zipFile.getInputStream(entry)) {
+            ValidationResult result = validator.validate(content);
+            report.result(archive.toString(), entry.getName(), entry.getSize(), System.nanoTime() - start, result);
+        } catch (IOException | RuntimeException e) {
+            report.failure(archive.toString(), entry.getName(), entry.getSize(), System.nanoTime() - start, e);
+        }
+    }
+
+    private ByteBuffer read(FileChannel channel, int size) throws IOException {
+        if (buffer.capacity() < size) {
+            buffer = ByteBuffer.allocate(Integer.highestOneBit(size - 1) << 1);
+        }
+        buffer.clear();
+        buffer.limit(size);
+        while (buffer.hasRemaining()) {
+            // a file may be shorter than its size by the time it is read
+            if (channel.read(buffer) == -1) break;
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
@@ -0,0 +1,134 @@
+package com.github.bgalek.security.svg.cli;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BulkScannerTest {
+    private static final String CLEAN = "<svg xmlns=\"http://www.w3.org/2000/svg\"><rect width=\"1\" height=\"1\"/></svg>";
+    private static final String HACKED = "<svg xmlns=\"http://www.w3.org/2000/svg\"><script>alert(1)</script></svg>";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void shouldExitWithZeroWhenEverythingIsClean() throws Exception {
+        write("a.svg", CLEAN);
+        write("nested/b.svg", CLEAN);
+        write("notes.txt", HACKED);
+
+        assertEquals(0, scan(directory.toString()));
+        List<String> lines = report();
+        assertEquals(2, lines.size());
+        assertTrue(lines.stream().allMatch(line -> line.contains("\"verdict\":\"clean\",\"offendingElements\":[]")), lines.toString());
+    }
+
+    @Test
+    void shouldExitWithOneWhenViolationsAreFound() throws Exception {
+        write("a.svg", CLEAN);
+        Path hacked = write("b.svg", HACKED);
+
+        assertEquals(1, scan(directory.toString()));
+        assertReported(report(), prefix(hacked) + ",\"size\":" + Files.size(hacked) + ",", "\"verdict\":\"violations\",\"offendingElements\":[\"script\"]}");
+    }
+
+    @Test
+    void shouldExitWithTwoWhenFilesCannotBeValidated() throws Exception {
+        write("a.svg", HACKED);
+        Path broken = write("b.svg", "<svg xmlns=\"http://www.w3.org/2000/svg\"><rect></svg>");
+
+        assertEquals(2, scan("--syntax-validation", directory.toString()));
+        List<String> lines = report();
+        assertEquals(2, lines.size());
+        assertReported(lines, prefix(broken), "\"verdict\":\"failed\",\"error\":\"com.github.bgalek.security.svg.InvalidXMLSyntaxException");
+        assertReported(lines, "{", "\"verdict\":\"violations\",\"offendingElements\":[\"script\"]}");
+    }
+
+    @Test
+    void shouldReportMissingInputsAndBrokenArchivesOnTheirOwnLines() throws Exception {
+        Path missing = directory.resolve("missing.svg");
+        Path archive = write("broken.zip", "not an archive");
+
+        assertEquals(2, scan(missing.toString(), archive.toString()));
+        List<String> lines = report();
+        assertEquals(2, lines.size());
+        assertReported(lines, prefix(missing), ",\"size\":-1,\"nanos\":0,\"verdict\":\"failed\",\"error\":\"java.nio.file.NoSuchFileException: ");
+        assertReported(lines, prefix(archive), ",\"size\":-1,\"nanos\":0,\"verdict\":\"failed\",\"error\":\"java.util.zip.ZipException");
+    }
+
+    @ParameterizedTest(name = "scan archive entries {0}")
+    @ValueSource(strings = {"--syntax-validation", "--single-pass", "--fail-fast"})
+    void shouldScanArchiveEntries(String option) throws Exception {
+        Path archive = directory.resolve("icons.zip");
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(archive))) {
+            entry(zip, "icons/clean.svg", CLEAN);
+            entry(zip, "icons/hacked.svg", HACKED);
+            entry(zip, "icons/readme.txt", HACKED);
+            // larger than the validator keeps in memory, and ambiguous, so it is replayed to the sanitizer
+            StringBuilder large = new StringBuilder("<svg xmlns=\"http://www.w3.org/2000/svg\"><use href=\"&#35;a\"/><desc>");
+            while (large.length() < 2 << 20) {
+                large.append("a description longer than what used to be replayed\n");
+            }
+            entry(zip, "icons/large.svg", large.append("</desc><foreignObject/></svg>").toString());
+        }
+
+        assertEquals(1, scan(option, archive.toString()));
+        List<String> lines = report();
+        assertEquals(3, lines.size(), lines.toString());
+        assertReported(lines, prefix(archive) + ",\"entry\":\"icons/clean.svg\",", "\"verdict\":\"clean\",\"offendingElements\":[]}");
+        assertReported(lines, prefix(archive) + ",\"entry\":\"icons/hacked.svg\",", "\"verdict\":\"violations\",\"offendingElements\":[\"script\"]}");
+        assertReported(lines, prefix(archive) + ",\"entry\":\"icons/large.svg\",", "\"verdict\":\"violations\",\"offendingElements\":[\"foreignObject\"]}");
+    }
+
+    @ParameterizedTest(name = "reject {0}")
+    @ValueSource(strings = {"", "--threads 0", "--threads many .", "--time-budget", "--verbose ."})
+    void shouldExitWithSixtyFourOnInvalidArguments(String arguments) throws Exception {
+        assertEquals(64, BulkScanner.scan(arguments.isEmpty() ? new String[0] : arguments.split(" ")));
+    }
+
+    private int scan(String... arguments) throws IOException, InterruptedException {
+        String[] withOutput = new String[arguments.length + 4];
+        withOutput[0] = "--threads";
+        withOutput[1] = "2";
+        withOutput[2] = "--output";
+        withOutput[3] = directory.resolve("report.jsonl").toString();
+        System.arraycopy(arguments, 0, withOutput, 4, arguments.length);
+        return BulkScanner.scan(withOutput);
+    }
+
+    private List<String> report() throws IOException {
+        return Files.readAllLines(directory.resolve("report.jsonl"), StandardCharsets.UTF_8);
+    }
+
+    private Path write(String name, String content) throws IOException {
+        Path file = directory.resolve(name);
+        Files.createDirectories(file.getParent());
+        return Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void entry(ZipOutputStream zip, String name, String content) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(content.getBytes(StandardCharsets.UTF_8));
+        zip.closeEntry();
+    }
+
+    private static void assertReported(List<String> lines, String prefix, String verdict) {
+        assertTrue(lines.stream().anyMatch(line -> line.startsWith(prefix) && line.contains(verdict)), lines.toString());
+    }
+
+    private static String prefix(Path file) {
+        return "{\"path\":\"" + file.toString().replace("\\", "\\\\") + "\"";
+    }
+}
@@ -0,0 +1,111 @@
+package com.github.bgalek.security.svg.cli;
+
+import com.github.bgalek.security.svg.SvgSecurityValidator;
+import com.github.bgalek.security.svg.ValidationStatistics;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.file.AccessDeniedException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JsonLinesReportTest {
+    private static final SvgSecurityValidator VALIDATOR = SvgSecurityValidator.builder().build();
+    private static final String CLEAN = "<svg xmlns=\"http://www.w3.org/2000/svg\"><rect/></svg>";
+    private static final String HACKED = "<svg xmlns=\"http://www.w3.org/2000/svg\"><script/></svg>";
+
+    @Test
+    void shouldWriteResultLines() throws IOException {
+        StringWriter output = new StringWriter();
+        try (JsonLinesReport report = new JsonLinesReport(output)) {
+            report.result("a.svg", null, 52, 1200, VALIDATOR.validate(CLEAN));
+            report.result("icons.zip", "b.svg", 54, 81200, VALIDATOR.validate(HACKED));
+        }
+        assertEquals("{\"path\":\"a.svg\",\"size\":52,\"nanos\":1200,\"verdict\":\"clean\",\"offendingElements\":[]}\n"
+                + "{\"path\":\"icons.zip\",\"entry\":\"b.svg\",\"size\":54,\"nanos\":81200,\"verdict\":\"violations\",\"offendingElements\":[\"script\"]}\n",
+                output.toString());
+    }
+
+    @ParameterizedTest(name = "escape {0}")
+    @CsvSource(delimiter = '|', quoteCharacter = '\'', value = {
+            "'a \"quoted\" name.svg' | 'a \\\"quoted\\\" name.svg'",
+            "'C:\\icons\\a.svg' | 'C:\\\\icons\\\\a.svg'",
+            "'tab\tand\nnew line.svg' | 'tab\\u0009and\\u000anew line.svg'",
+            "'ikona żółta.svg' | 'ikona żółta.svg'"
+    })
+    void shouldEscapeNames(String name, String escaped) throws IOException {
+        StringWriter output = new StringWriter();
+        try (JsonLinesReport report = new JsonLinesReport(output)) {
+            report.result("archive.zip", name, 1, 1, VALIDATOR.validate(CLEAN));
+            report.failure(name, null, -1, 0, new AccessDeniedException(name));
+        }
+        assertEquals("{\"path\":\"archive.zip\",\"entry\":\"" + escaped + "\",\"size\":1,\"nanos\":1,\"verdict\":\"clean\",\"offendingElements\":[]}\n"
+                + "{\"path\":\"" + escaped + "\",\"size\":-1,\"nanos\":0,\"verdict\":\"failed\",\"error\":\"java.nio.file.AccessDeniedException: " + escaped + "\"}\n",
+                output.toString());
+    }
+
+    @Test
+    void shouldExitWithWorstVerdict() throws IOException {
+        try (JsonLinesReport report = new JsonLinesReport(new StringWriter())) {
+            assertEquals(0, report.exitCode());
+            report.result("a.svg", null, 1, 1, VALIDATOR.validate(CLEAN));
+            assertEquals(0, report.exitCode());
+            report.result("b.svg", null, 1, 1, VALIDATOR.validate(HACKED));
+            assertEquals(1, report.exitCode());
+            report.failure("c.svg", null, 1, 1, new IOException("gone"));
+            assertEquals(2, report.exitCode());
+            report.result("d.svg", null, 1, 1, VALIDATOR.validate(CLEAN));
+            assertEquals(2, report.exitCode());
+        }
+    }
+
+    @Test
+    void shouldSummarizeScan() throws IOException {
+        ValidationStatistics statistics = new ValidationStatistics();
+        SvgSecurityValidator validator = SvgSecurityValidator.builder().withInstrumentation(statistics).build();
+        ByteArrayOutputStream summary = new ByteArrayOutputStream();
+        try (JsonLinesReport report = new JsonLinesReport(new StringWriter())) {
+            report.result("a.svg", null, 1 << 20, 1, validator.validate(CLEAN));
+            report.result("b.svg", null, 1 << 20, 1, validator.validate(HACKED));
+            report.failure("c.svg", null, -1, 0, new IOException("gone"));
+            report.printSummary(new PrintStream(summary, true, "UTF-8"), 2_000_000_000L, statistics);
+        }
+        String printed = summary.toString("UTF-8");
+        assertTrue(printed.startsWith("Scanned 3 files (1 clean, 1 with violations, 1 failed), 2.0 MiB in 2.00 s"), printed);
+        assertTrue(printed.contains("Throughput: 2 files/s, 1.0 MiB/s"), printed);
+        assertTrue(printed.matches("(?s).*script +1 files.*"), printed);
+    }
+
+    @Test
+    void shouldThrowWriteFailureOnClose() {
+        IOException failure = new IOException("disk full");
+        JsonLinesReport report = new JsonLinesReport(new Writer() {
+            @Override
+            public void write(char[] buffer, int offset, int length) throws IOException {
+                throw failure;
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        report.result("a.svg", null, 1, 1, VALIDATOR.validate(CLEAN));
+        report.result("b.svg", null, 1, 1, VALIDATOR.validate(HACKED));
+
+        assertSame(failure, assertThrows(IOException.class, report::close));
+        assertEquals(1, report.exitCode());
+    }
+}
@@ -0,0 +1,77 @@
+package com.github.bgalek.security.svg;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link SvgSecurityValidator#validateAll} on an icon pack of small generated documents,
+ * as the batch grows and as the pool gets more threads. A sequential loop is the baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchValidationBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int batchSize;
+
+    @Param({"1", "2", "4", "8"})
+    public int parallelism;
+
+    @Param({"false", "true"})
+    public boolean syntaxValidation;
+
+    private List<String> inputs;
+    private SvgSecurityValidator validator;
+    private ForkJoinPool pool;
+
+    @Setup
+    public void setUp() {
+        inputs = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            // vary the size a little so the icons are not all identical
+            inputs.add(BenchmarkInputs.generate(2048 + (i % 16) * 128));
+        }
+        SvgSecurityValidatorBuilder builder = SvgSecurityValidator.builder();
+        if (syntaxValidation) builder.withSyntaxValidation();
+        validator = builder.build();
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public List<ValidationResult> sequentialLoop() {
+        List<ValidationResult> results = new ArrayList<>(inputs.size());
+        for (String input : inputs) {
+            results.add(validator.validate(input));
+        }
+        return results;
+    }
+
+    @Benchmark
+    public List<ValidationResult> validateAll() {
+        return validator.validateAll(inputs, pool);
+    }
+}
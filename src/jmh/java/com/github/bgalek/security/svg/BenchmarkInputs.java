@@ -0,0 +1,62 @@
+package com.github.bgalek.security.svg;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+final class BenchmarkInputs {
+    private static final String GENERATED = "generated:";
+
+    private BenchmarkInputs() {
+    }
+
+    /**
+     * @param input a fixture file name, or {@code generated:<bytes>} for a document from {@link #generate(int)}
+     */
+    static String resolve(String input) {
+        if (input.startsWith(GENERATED)) return generate(Integer.parseInt(input.substring(GENERATED.length())));
+        return load(input);
+    }
+
+    static String load(String fileName) {
+        return new String(loadBytes(fileName), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Generates a well-formed, clean SVG of roughly the requested size, shaped like the map and
+     * diagram exports we see in production: many grouped paths with styling attributes.
+     */
+    static String generate(int approximateBytes) {
+        StringBuilder svg = new StringBuilder(approximateBytes + 256);
+        svg.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                .append("<svg xmlns=\"http://www.w3.org/2000/svg\" xmlns:xlink=\"http://www.w3.org/1999/xlink\" ")
+                .append("version=\"1.1\" viewBox=\"0 0 1000 1000\">\n");
+        for (int i = 0; svg.length() < approximateBytes; i++) {
+            svg.append("<g id=\"group").append(i).append("\" transform=\"translate(").append(i % 100).append(' ').append(i / 100).append(")\">\n")
+                    .append("  <path d=\"M").append(i % 997).append(",").append(i % 991)
+                    .append("c0,0 12.5,-3.5 25,0s12.5,3.5 25,0l10,10h-20v20z\" fill=\"#08").append(i % 10).append("135\" ")
+                    .append("stroke=\"#004400\" stroke-width=\"1.5\"/>\n")
+                    .append("  <rect x=\"").append(i % 1000).append("\" y=\"").append(i % 500).append("\" width=\"10\" height=\"10\" opacity=\"0.5\"/>\n")
+                    .append("  <text x=\"5\" y=\"5\" font-family=\"Helvetica\">label ").append(i).append("</text>\n")
+                    .append("</g>\n");
+        }
+        return svg.append("</svg>\n").toString();
+    }
+
+    static byte[] loadBytes(String fileName) {
+        try (InputStream input = Objects.requireNonNull(BenchmarkInputs.class.getClassLoader().getResourceAsStream(fileName), fileName)) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+            return output.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
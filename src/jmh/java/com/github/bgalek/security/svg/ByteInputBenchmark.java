@@ -0,0 +1,65 @@
+package com.github.bgalek.security.svg;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Byte inputs decoded into a {@link String} up front against the in-place byte entry points,
+ * run with the gc profiler to compare allocation per validation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ByteInputBenchmark {
+
+    @Param({"4096", "262144", "4194304"})
+    public int size;
+
+    @Param({"false", "true"})
+    public boolean syntaxValidation;
+
+    private byte[] bytes;
+    private ByteBuffer direct;
+    private SvgSecurityValidator validator;
+
+    @Setup
+    public void setUp() {
+        bytes = BenchmarkInputs.generate(size).getBytes(StandardCharsets.UTF_8);
+        direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).flip();
+        SvgSecurityValidatorBuilder builder = SvgSecurityValidator.builder().withSinglePassValidation();
+        if (syntaxValidation) builder.withSyntaxValidation();
+        validator = builder.build();
+    }
+
+    @Benchmark
+    public ValidationResult decodedString() {
+        return validator.validate(new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public ValidationResult byteArray() {
+        return validator.validate(bytes);
+    }
+
+    @Benchmark
+    public ValidationResult directBuffer() {
+        return validator.validate(direct);
+    }
+}
@@ -0,0 +1,62 @@
+package com.github.bgalek.security.svg;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * The three case-insensitive regular expressions the validator used to run one after another,
+ * against {@link DangerousContentScanner} finding the same signatures in a single pass.
+ * Clean documents are the worst case for both, every expression has to read the whole input.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DangerousContentBenchmark {
+    private static final Pattern JAVASCRIPT_PROTOCOL_IN_CSS_URL =
+            Pattern.compile("url\\(\\s*['\"]?\\s*javascript", Pattern.CASE_INSENSITIVE);
+    private static final Pattern SCRIPT_TAG =
+            Pattern.compile("<\\s*/?\\s*script(\\s|/|>|$)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern JAVASCRIPT_PROTOCOL_IN_XLINK_HREF =
+            Pattern.compile("xlink:href\\s*=\\s*[\"']?\\s*javascript:", Pattern.CASE_INSENSITIVE);
+
+    @Param({"4096", "262144", "4194304"})
+    public int size;
+
+    private String input;
+
+    @Setup
+    public void setUp() {
+        input = BenchmarkInputs.generate(size);
+    }
+
+    @Benchmark
+    public String regularExpressions() {
+        if (JAVASCRIPT_PROTOCOL_IN_CSS_URL.matcher(input).find()) return "style";
+        if (SCRIPT_TAG.matcher(input).find()) return "script";
+        if (JAVASCRIPT_PROTOCOL_IN_XLINK_HREF.matcher(input).find()) return "xlink:href";
+        return null;
+    }
+
+    @Benchmark
+    public String scanner() {
+        DangerousContentScanner scanner = new DangerousContentScanner();
+        scanner.scan(input, 0, input.length());
+        scanner.finish();
+        return scanner.offendingElement();
+    }
+}
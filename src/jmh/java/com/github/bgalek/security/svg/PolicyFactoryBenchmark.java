@@ -0,0 +1,51 @@
+package com.github.bgalek.security.svg;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares a validator that compiles its sanitizer policy once against building
+ * a new validator (and therefore a new policy) for every call, which is what
+ * {@code validate()} used to do internally.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PolicyFactoryBenchmark {
+
+    @Param({"safe/valid1.svg", "safe/valid3.svg", "hacked/with-onclick-attribute.svg"})
+    public String file;
+
+    private String input;
+    private SvgSecurityValidator validator;
+
+    @Setup
+    public void setUp() {
+        input = BenchmarkInputs.load(file);
+        validator = SvgSecurityValidator.builder().build();
+    }
+
+    @Benchmark
+    public ValidationResult sharedPolicy() {
+        return validator.validate(input);
+    }
+
+    @Benchmark
+    public ValidationResult policyPerCall() {
+        return SvgSecurityValidator.builder().build().validate(input);
+    }
+}
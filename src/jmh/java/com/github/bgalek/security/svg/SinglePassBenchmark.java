@@ -0,0 +1,61 @@
+package com.github.bgalek.security.svg;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Default staged validation (syntax parse, three regex scans, sanitizer) against the single-pass
+ * engine, on generated clean documents where every stage has to read the whole input.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SinglePassBenchmark {
+
+    @Param({"4096", "262144", "4194304"})
+    public int size;
+
+    @Param({"false", "true"})
+    public boolean syntaxValidation;
+
+    private String input;
+    private SvgSecurityValidator staged;
+    private SvgSecurityValidator singlePass;
+
+    @Setup
+    public void setUp() {
+        input = BenchmarkInputs.generate(size);
+        SvgSecurityValidatorBuilder stagedBuilder = SvgSecurityValidator.builder();
+        SvgSecurityValidatorBuilder singlePassBuilder = SvgSecurityValidator.builder().withSinglePassValidation();
+        if (syntaxValidation) {
+            stagedBuilder.withSyntaxValidation();
+            singlePassBuilder.withSyntaxValidation();
+        }
+        staged = stagedBuilder.build();
+        singlePass = singlePassBuilder.build();
+    }
+
+    @Benchmark
+    public ValidationResult staged() {
+        return staged.validate(input);
+    }
+
+    @Benchmark
+    public ValidationResult singlePass() {
+        return singlePass.validate(input);
+    }
+}
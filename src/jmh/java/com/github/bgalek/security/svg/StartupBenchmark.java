@@ -0,0 +1,67 @@
+package com.github.bgalek.security.svg;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to first verdict in a fresh JVM, as when a serverless function starts: every fork measures a single
+ * validation, with the sanitizer, the XML parser and the JIT compiler as cold as they come.
+ * {@code coldFirstVerdict} builds the validator and validates; {@code warmedUpFirstVerdict} validates with a
+ * validator from {@link SvgSecurityValidatorBuilder#buildWarmedUp()}, whose warm-up runs in the untimed setup.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(20)
+public class StartupBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Cold {
+        @Param({"false", "true"})
+        public boolean syntaxValidation;
+
+        private String input;
+
+        @Setup
+        public void setUp() {
+            input = BenchmarkInputs.load("safe/valid3.svg");
+        }
+
+        SvgSecurityValidatorBuilder builder() {
+            SvgSecurityValidatorBuilder builder = SvgSecurityValidator.builder();
+            return syntaxValidation ? builder.withSyntaxValidation() : builder;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class WarmedUp {
+        private SvgSecurityValidator validator;
+
+        @Setup
+        public void setUp(Cold cold) {
+            validator = cold.builder().buildWarmedUp();
+        }
+    }
+
+    @Benchmark
+    public ValidationResult coldFirstVerdict(Cold cold) {
+        return cold.builder().build().validate(cold.input);
+    }
+
+    @Benchmark
+    public ValidationResult warmedUpFirstVerdict(Cold cold, WarmedUp warmedUp) {
+        return warmedUp.validator.validate(cold.input);
+    }
+}
@@ -0,0 +1,65 @@
+package com.github.bgalek.security.svg;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streaming well-formedness check against the DOM parse it replaced, on generated documents
+ * from a few kilobytes to several megabytes. Run with {@code -prof gc} (enabled by default in
+ * the build) and compare {@code gc.alloc.rate.norm}: the DOM variant grows with the document,
+ * the streaming one should stay close to flat.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StreamingSyntaxBenchmark {
+
+    @Param({"4096", "262144", "4194304"})
+    public int size;
+
+    private String input;
+    private XmlSyntaxValidator syntaxValidator;
+    private DocumentBuilder domParser;
+
+    @Setup
+    public void setUp() throws Exception {
+        input = BenchmarkInputs.generate(size);
+        syntaxValidator = new XmlSyntaxValidator();
+        DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
+        documentBuilderFactory.setNamespaceAware(true);
+        documentBuilderFactory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+        documentBuilderFactory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+        documentBuilderFactory.setExpandEntityReferences(false);
+        domParser = documentBuilderFactory.newDocumentBuilder();
+    }
+
+    @Benchmark
+    public void streaming() {
+        syntaxValidator.validate(input);
+    }
+
+    @Benchmark
+    public Document dom() throws Exception {
+        return domParser.parse(new InputSource(new StringReader(input)));
+    }
+}
@@ -0,0 +1,65 @@
+package com.github.bgalek.security.svg;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of a single validator with syntax validation shared by 1 to N threads.
+ * Scaling close to linear means callers no longer serialize on the XML parser.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SyntaxValidationBenchmark {
+
+    @Param({"safe/valid1.svg", "safe/valid3.svg"})
+    public String file;
+
+    private String input;
+    private XmlSyntaxValidator syntaxValidator;
+
+    @Setup
+    public void setUp() {
+        input = BenchmarkInputs.load(file);
+        syntaxValidator = new XmlSyntaxValidator();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void oneThread() {
+        syntaxValidator.validate(input);
+    }
+
+    @Benchmark
+    @Threads(2)
+    public void twoThreads() {
+        syntaxValidator.validate(input);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void fourThreads() {
+        syntaxValidator.validate(input);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void allCores() {
+        syntaxValidator.validate(input);
+    }
+}
@@ -0,0 +1,89 @@
+package com.github.bgalek.security.svg;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every public validation path on every kind of input, from the test fixtures to multi-megabyte
+ * generated documents. Throughput and sampled latency (with percentiles) are measured in one run,
+ * the gc profiler configured in the build adds allocation per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ValidationPathsBenchmark {
+
+    @Param({
+            "safe/valid1.svg", "safe/valid2.svg", "safe/valid3.svg",
+            "hacked/with-script-tag.svg", "hacked/with-onclick-attribute.svg", "hacked/with-css-url-syntax.svg",
+            "hacked/with-xlink-href-javascript-on-use.svg",
+            "xxe/billion-laughs.svg", "xxe/with-external-entity.svg",
+            "generated:1024", "generated:65536", "generated:4194304"
+    })
+    public String input;
+
+    @Param({"default", "syntaxValidation", "customAllowList", "singlePass"})
+    public String configuration;
+
+    private String content;
+    private byte[] bytes;
+    private SvgSecurityValidator validator;
+
+    @Setup
+    public void setUp() {
+        content = BenchmarkInputs.resolve(input);
+        bytes = content.getBytes(StandardCharsets.UTF_8);
+        validator = configure(SvgSecurityValidator.builder(), configuration).build();
+    }
+
+    private static SvgSecurityValidatorBuilder configure(SvgSecurityValidatorBuilder builder, String configuration) {
+        switch (configuration) {
+            case "default":
+                return builder;
+            case "syntaxValidation":
+                return builder.withSyntaxValidation();
+            case "customAllowList":
+                return builder
+                        .withAdditionalElements(Arrays.asList("font-face", "missing-glyph", "glyph", "hkern"))
+                        .withAdditionalAttributes(Arrays.asList("horiz-adv-x", "units-per-em", "unicode", "glyph-name"));
+            case "singlePass":
+                return builder.withSinglePassValidation();
+            default:
+                throw new IllegalArgumentException("Unknown configuration " + configuration);
+        }
+    }
+
+    @Benchmark
+    public Object validateString() {
+        try {
+            return validator.validate(content);
+        } catch (InvalidXMLSyntaxException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public Object validateBytes() {
+        try {
+            return validator.validate(bytes);
+        } catch (InvalidXMLSyntaxException e) {
+            return e;
+        }
+    }
+}
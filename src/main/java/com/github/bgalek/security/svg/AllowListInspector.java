@@ -0,0 +1,203 @@
+package com.github.bgalek.security.svg;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Mirrors the decisions the OWASP sanitizer policy built by {@link SvgSecurityValidator} makes for
+ * each tag, without producing sanitized output: elements outside the allow-list are reported by name,
+ * attributes are reported only on elements that are kept. Whenever the sanitizer might decide
+ * differently the inspection is marked as ambiguous and its violations must not be trusted.
+ */
+final class AllowListInspector implements SvgTokenizer.Handler {
+    // attributes the sanitizer filters by URL protocol, only "https" (and relative URLs) pass
+    private static final NameSet URL_ATTRIBUTES = NameSet.of(
+            "action", "archive", "background", "cite", "classid", "codebase", "data", "dsync", "formaction",
+            "href", "icon", "longdesc", "manifest", "poster", "profile", "src", "srcset", "usemap");
+    // elements the sanitizer drops when none of their attributes survive
+    private static final NameSet SKIPPED_WHEN_EMPTY = NameSet.of("a", "font", "img", "input", "span");
+    // of those, the ones the sanitizer's tag balancer closes around block content and reopens without
+    // their attributes
+    private static final NameSet RESUMED_WITHOUT_ATTRIBUTES = NameSet.of("a", "font");
+    // elements the sanitizer's tag balancer wraps in implied parents (a lone <td> is reported with
+    // table, tbody and tr) or fills with implied children (<ul> with anything but <li>)
+    private static final NameSet IMPLIED_STRUCTURE = NameSet.of(
+            "caption", "col", "colgroup", "li", "ol", "optgroup", "option", "select", "tbody", "td", "tfoot", "th",
+            "thead", "tr", "ul");
+    private static final NameSet STYLE = NameSet.of("style");
+    private static final NameSet SRCSET = NameSet.of("srcset");
+    private static final NameSet HTTPS = NameSet.of("https");
+    // tags with more attributes are left to the sanitizer rather than searched for repeats
+    private static final int MAX_TRACKED_ATTRIBUTES = 64;
+
+    private final NameSet elements;
+    private final NameSet attributes;
+    private final Set<String> violations = new HashSet<>();
+    // open addressing over the reported names, looked up in place like a NameSet
+    private String[] reported = new String[16];
+    private int reportedCount;
+    private boolean ambiguous;
+    private String firstViolation;
+    private boolean inKeptElement;
+    private boolean skippedWhenEmpty;
+    private int keptAttributes;
+    // hashes of the attribute names seen on the current kept tag
+    private final int[] attributeNames = new int[MAX_TRACKED_ATTRIBUTES];
+    private int attributeCount;
+
+    /**
+     * Names are only turned into strings when they are reported, allowed ones are looked up in place.
+     */
+    AllowListInspector(NameSet elements, NameSet attributes) {
+        this.elements = elements;
+        this.attributes = attributes;
+    }
+
+    @Override
+    public void startTag(CharSequence name) {
+        checkName(name);
+        if (IMPLIED_STRUCTURE.contains(name)) ambiguous = true;
+        inKeptElement = elements.contains(name);
+        if (inKeptElement) {
+            skippedWhenEmpty = SKIPPED_WHEN_EMPTY.contains(name);
+            if (skippedWhenEmpty && RESUMED_WITHOUT_ATTRIBUTES.contains(name)) ambiguous = true;
+            keptAttributes = 0;
+            attributeCount = 0;
+        } else {
+            report(elements, name);
+        }
+    }
+
+    @Override
+    public void attribute(CharSequence name, CharSequence value) {
+        if (!inKeptElement) return;
+        checkName(name);
+        // the sanitizer keeps one of repeated attributes without reporting the others
+        if (isRepeated(name)) ambiguous = true;
+        // always stripped by the sanitizer but never reported, see SvgSecurityValidator
+        if (STYLE.contains(name)) return;
+        if (!attributes.contains(name) || URL_ATTRIBUTES.contains(name) && !isAllowedUrl(name, value)) {
+            report(attributes, name);
+        } else {
+            keptAttributes++;
+        }
+    }
+
+    @Override
+    public void startTagEnd(boolean selfClosing) {
+        if (inKeptElement && keptAttributes == 0 && skippedWhenEmpty) {
+            ambiguous = true;
+        }
+    }
+
+    @Override
+    public void endTag(CharSequence name) {
+        checkName(name);
+    }
+
+    @Override
+    public void ambiguousMarkup() {
+        ambiguous = true;
+    }
+
+    boolean isAmbiguous() {
+        return ambiguous;
+    }
+
+    Set<String> getViolations() {
+        return violations;
+    }
+
+    /**
+     * @return the first violation found while the inspection was not yet ambiguous, or null
+     */
+    String getFirstViolation() {
+        return firstViolation;
+    }
+
+    /**
+     * Turns the name into a string only the first time it is reported.
+     */
+    private void report(NameSet names, CharSequence name) {
+        // "style" is never a violation, see SvgSecurityValidator
+        if (STYLE.contains(name)) return;
+        int mask = reported.length - 1;
+        int slot = names.canonicalHash(name) & mask;
+        for (; reported[slot] != null; slot = slot + 1 & mask) {
+            if (names.isCanonicalName(reported[slot], name)) return;
+        }
+        String violation = names.canonicalName(name);
+        reported[slot] = violation;
+        if (++reportedCount * 2 > reported.length) growReported();
+        if (firstViolation == null && !ambiguous) firstViolation = violation;
+        violations.add(violation);
+    }
+
+    private void growReported() {
+        String[] names = reported;
+        reported = new String[names.length * 2];
+        int mask = reported.length - 1;
+        for (String name : names) {
+            if (name == null) continue;
+            int slot = NameSet.hash(name) & mask;
+            while (reported[slot] != null) {
+                slot = slot + 1 & mask;
+            }
+            reported[slot] = name;
+        }
+    }
+
+    private boolean isAllowedUrl(CharSequence attribute, CharSequence value) {
+        if (value == null) return true;
+        int length = value.length();
+        if (SRCSET.contains(attribute) || length > 0 && (SvgTokenizer.isWhitespace(value.charAt(0)) || SvgTokenizer.isWhitespace(value.charAt(length - 1)))) {
+            ambiguous = true;
+            return true;
+        }
+        for (int i = 0; i < length; i++) {
+            switch (value.charAt(i)) {
+                case '&':
+                    // character references are decoded before the protocol check
+                    ambiguous = true;
+                    return true;
+                case '/':
+                case '#':
+                case '?':
+                    return true;
+                case ':':
+                    return HTTPS.contains(value, 0, i);
+                default:
+                    break;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Names are compared by hash, so a rare collision merely costs a fallback.
+     */
+    private boolean isRepeated(CharSequence name) {
+        if (attributeCount == MAX_TRACKED_ATTRIBUTES) return true;
+        int hash = 0;
+        for (int i = 0; i < name.length(); i++) {
+            hash = 31 * hash + SvgTokenizer.toLowerCase(name.charAt(i));
+        }
+        for (int i = 0; i < attributeCount; i++) {
+            if (attributeNames[i] == hash) return true;
+        }
+        attributeNames[attributeCount++] = hash;
+        return false;
+    }
+
+    private void checkName(CharSequence name) {
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            boolean plain = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '_' || c == ':' || c == '.';
+            if (!plain) {
+                ambiguous = true;
+                return;
+            }
+        }
+    }
+}
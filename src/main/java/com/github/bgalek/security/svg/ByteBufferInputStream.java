@@ -0,0 +1,42 @@
+package com.github.bgalek.security.svg;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads the bytes between a {@link ByteBuffer}'s position and limit, heap, direct and memory-mapped
+ * buffers alike. The buffer's position is left untouched.
+ */
+final class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer input;
+
+    ByteBufferInputStream(ByteBuffer input) {
+        this.input = input.duplicate();
+    }
+
+    @Override
+    public int read() {
+        return input.hasRemaining() ? input.get() & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+        if (length == 0) return 0;
+        if (!input.hasRemaining()) return -1;
+        int read = Math.min(length, input.remaining());
+        input.get(buffer, offset, read);
+        return read;
+    }
+
+    @Override
+    public long skip(long n) {
+        int skipped = (int) Math.max(0, Math.min(n, input.remaining()));
+        input.position(input.position() + skipped);
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return input.remaining();
+    }
+}
@@ -0,0 +1,63 @@
+package com.github.bgalek.security.svg;
+
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Decodes UTF-8 straight from a {@link ByteBuffer} into the caller's buffer, heap, direct and
+ * memory-mapped buffers alike. Malformed input is replaced like {@code new String(bytes, UTF_8)} does.
+ * The buffer's position is left untouched.
+ */
+final class ByteBufferReader extends Reader {
+    private final ByteBuffer input;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private boolean decoded;
+    private boolean flushed;
+    // second half of a surrogate pair decoded for a single character read
+    private int pending = -1;
+
+    ByteBufferReader(ByteBuffer input) {
+        this.input = input.duplicate();
+    }
+
+    @Override
+    public int read(char[] chars, int offset, int length) {
+        if (length == 0) return 0;
+        if (pending != -1) {
+            chars[offset] = (char) pending;
+            pending = -1;
+            return 1;
+        }
+        if (length == 1) {
+            // a supplementary character needs room for two chars
+            char[] pair = new char[2];
+            int read = read(pair, 0, 2);
+            if (read > 0) chars[offset] = pair[0];
+            if (read == 2) pending = pair[1];
+            return Math.min(read, 1);
+        }
+        CharBuffer output = CharBuffer.wrap(chars, offset, length);
+        if (!decoded) {
+            // the whole input is available, so every call may be the last one
+            CoderResult result = decoder.decode(input, output, true);
+            decoded = result.isUnderflow();
+        }
+        if (decoded && !flushed) {
+            flushed = decoder.flush(output).isUnderflow();
+        }
+        int read = output.position() - offset;
+        return read == 0 && flushed ? -1 : read;
+    }
+
+    @Override
+    public void close() {
+        // nothing to release, the buffer belongs to the caller
+    }
+}
@@ -0,0 +1,104 @@
+package com.github.bgalek.security.svg;
+
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Hands chunks of chars pushed on one thread to a reader on another, at most {@value #CAPACITY} chunks
+ * ahead of it, so a pull parser can consume input that is pushed. Waiting for input does not starve a
+ * {@link ForkJoinPool}, the pool is told the reading thread is blocked.
+ */
+final class CharChannel extends Reader {
+    private static final int CAPACITY = 4;
+    private static final char[] END = new char[0];
+
+    private final BlockingQueue<char[]> chunks = new ArrayBlockingQueue<>(CAPACITY);
+    private volatile boolean readerGone;
+    private char[] current;
+    private int position;
+
+    /**
+     * Waits while the reader is {@value #CAPACITY} chunks behind. Chunks are dropped once the reader is gone.
+     */
+    void write(char[] chunk) throws InterruptedIOException {
+        if (readerGone) return;
+        try {
+            chunks.put(chunk);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    void end() throws InterruptedIOException {
+        write(END);
+    }
+
+    /**
+     * Called by the reader when it stops reading, so writers waiting for room are released.
+     */
+    void readerGone() {
+        readerGone = true;
+        chunks.clear();
+    }
+
+    /**
+     * Ends the input without waiting, whatever was written and not yet read is dropped.
+     */
+    void abandon() {
+        chunks.clear();
+        chunks.offer(END);
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int length) throws InterruptedIOException {
+        if (length == 0) return 0;
+        if (current == null || position == current.length) {
+            current = take();
+            position = 0;
+            if (current == END) {
+                // later reads see the end again
+                chunks.offer(END);
+                return -1;
+            }
+        }
+        int read = Math.min(length, current.length - position);
+        System.arraycopy(current, position, buffer, offset, read);
+        position += read;
+        return read;
+    }
+
+    private char[] take() throws InterruptedIOException {
+        Take take = new Take();
+        try {
+            ForkJoinPool.managedBlock(take);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        return take.chunk;
+    }
+
+    @Override
+    public void close() {
+        // the reader closes its input when it is done, see readerGone()
+    }
+
+    private final class Take implements ForkJoinPool.ManagedBlocker {
+        private char[] chunk;
+
+        @Override
+        public boolean block() throws InterruptedException {
+            if (chunk == null) chunk = chunks.take();
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            return chunk != null || (chunk = chunks.poll()) != null;
+        }
+    }
+}
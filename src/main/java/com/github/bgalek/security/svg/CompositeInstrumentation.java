@@ -0,0 +1,55 @@
+package com.github.bgalek.security.svg;
+
+import java.util.List;
+
+/**
+ * Reports to several instrumentations in the order they were added, see
+ * {@link SvgSecurityValidatorBuilder#withInstrumentation}. What each of them returns when a validation or
+ * stage starts is passed back to it alone.
+ */
+final class CompositeInstrumentation implements ValidationInstrumentation {
+    private final ValidationInstrumentation[] instrumentations;
+
+    CompositeInstrumentation(List<ValidationInstrumentation> instrumentations) {
+        this.instrumentations = instrumentations.toArray(new ValidationInstrumentation[0]);
+    }
+
+    @Override
+    public Object validationStarted() {
+        Object[] started = new Object[instrumentations.length];
+        for (int i = 0; i < instrumentations.length; i++) {
+            started[i] = instrumentations[i].validationStarted();
+        }
+        return started;
+    }
+
+    @Override
+    public Object stageStarted() {
+        Object[] started = new Object[instrumentations.length];
+        for (int i = 0; i < instrumentations.length; i++) {
+            started[i] = instrumentations[i].stageStarted();
+        }
+        return started;
+    }
+
+    @Override
+    public void stageCompleted(Object started, Stage stage, long inputSize, long nanos) {
+        for (int i = 0; i < instrumentations.length; i++) {
+            instrumentations[i].stageCompleted(((Object[]) started)[i], stage, inputSize, nanos);
+        }
+    }
+
+    @Override
+    public void validationCompleted(Object started, long inputSize, long nanos, ValidationResult result) {
+        for (int i = 0; i < instrumentations.length; i++) {
+            instrumentations[i].validationCompleted(((Object[]) started)[i], inputSize, nanos, result);
+        }
+    }
+
+    @Override
+    public void validationFailed(Object started, long inputSize, long nanos, Exception failure) {
+        for (int i = 0; i < instrumentations.length; i++) {
+            instrumentations[i].validationFailed(((Object[]) started)[i], inputSize, nanos, failure);
+        }
+    }
+}
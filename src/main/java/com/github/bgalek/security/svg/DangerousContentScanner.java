@@ -0,0 +1,239 @@
+package com.github.bgalek.security.svg;
+
+/**
+ * Finds the three signatures that {@link SvgSecurityValidator} rejects without consulting the
+ * allow-lists, in one left-to-right pass, without backtracking and without allocating:
+ * <ul>
+ * <li>{@code url\(\s*['"]?\s*javascript} reported as {@code style}</li>
+ * <li><code>&lt;\s*&#47;?\s*script(\s|/|&gt;|$)</code> reported as {@code script}</li>
+ * <li>{@code xlink:href\s*=\s*["']?\s*javascript:} reported as {@code xlink:href}, the sanitizer
+ * protocol-filters {@code href} but not {@code xlink:href}, which is on the allow-list</li>
+ * </ul>
+ * Matching is ASCII case-insensitive and finds exactly what these expressions compiled with
+ * {@code Pattern.CASE_INSENSITIVE} find. Input may be fed in arbitrary chunks, a signature split
+ * across chunk boundaries is still found.
+ */
+final class DangerousContentScanner {
+    private static final String URL = "url(";
+    private static final String JAVASCRIPT = "javascript";
+    private static final String SCRIPT = "script";
+    private static final String XLINK_HREF = "xlink:href";
+    private static final String JAVASCRIPT_PROTOCOL = "javascript:";
+
+    // url(  ->  spaces  ->  optional quote  ->  spaces  ->  javascript
+    private static final int URL_NAME = 0;
+    private static final int URL_AFTER_PARENTHESIS = 1;
+    private static final int URL_AFTER_QUOTE = 2;
+    private static final int URL_JAVASCRIPT = 3;
+
+    // <  ->  spaces  ->  optional slash  ->  spaces  ->  script  ->  terminator
+    private static final int SCRIPT_NONE = 0;
+    private static final int SCRIPT_AFTER_LESS_THAN = 1;
+    private static final int SCRIPT_AFTER_SLASH = 2;
+    private static final int SCRIPT_NAME = 3;
+    private static final int SCRIPT_AFTER_NAME = 4;
+    private static final int SCRIPT_BEFORE_FINAL_LINE_TERMINATOR = 5;
+
+    // xlink:href  ->  spaces  ->  =  ->  spaces  ->  optional quote  ->  spaces  ->  javascript:
+    private static final int XLINK_NAME = 0;
+    private static final int XLINK_BEFORE_EQUALS = 1;
+    private static final int XLINK_AFTER_EQUALS = 2;
+    private static final int XLINK_AFTER_QUOTE = 3;
+    private static final int XLINK_JAVASCRIPT = 4;
+
+    private int urlState = URL_NAME;
+    private int urlMatched;
+    private boolean cssUrlFound;
+
+    private int scriptState = SCRIPT_NONE;
+    private int scriptMatched;
+    private boolean scriptTagFound;
+
+    private int xlinkState = XLINK_NAME;
+    private int xlinkMatched;
+    private boolean xlinkHrefFound;
+
+    void scan(char[] chars, int offset, int length) {
+        for (int i = offset, end = offset + length; i < end && !cssUrlFound; i++) {
+            scan(chars[i]);
+        }
+    }
+
+    void scan(CharSequence chars, int start, int end) {
+        for (int i = start; i < end && !cssUrlFound; i++) {
+            scan(chars.charAt(i));
+        }
+    }
+
+    private void scan(char c) {
+        scanCssUrl(c);
+        if (!scriptTagFound) scanScriptTag(c);
+        if (!xlinkHrefFound) scanXlinkHref(c);
+    }
+
+    /**
+     * Signals the end of input, {@code script} may only be found at the very end.
+     */
+    void finish() {
+        if (scriptState == SCRIPT_AFTER_NAME || scriptState == SCRIPT_BEFORE_FINAL_LINE_TERMINATOR) {
+            scriptTagFound = true;
+        }
+    }
+
+    /**
+     * @return true once no further input can change {@link #offendingElement()}
+     */
+    boolean isDecided() {
+        return cssUrlFound;
+    }
+
+    /**
+     * @return the reported element of the highest priority signature found so far, or null
+     */
+    String offendingElement() {
+        if (cssUrlFound) return "style";
+        if (scriptTagFound) return "script";
+        if (xlinkHrefFound) return "xlink:href";
+        return null;
+    }
+
+    private void scanCssUrl(char c) {
+        char lower = toLowerCase(c);
+        switch (urlState) {
+            case URL_NAME:
+                if (lower == URL.charAt(urlMatched)) {
+                    if (++urlMatched == URL.length()) urlState = URL_AFTER_PARENTHESIS;
+                    return;
+                }
+                break;
+            case URL_AFTER_PARENTHESIS:
+                if (isWhitespace(c)) return;
+                if (c == '\'' || c == '"') {
+                    urlState = URL_AFTER_QUOTE;
+                    return;
+                }
+                if (startJavascript(lower)) return;
+                break;
+            case URL_AFTER_QUOTE:
+                if (isWhitespace(c)) return;
+                if (startJavascript(lower)) return;
+                break;
+            default:
+                if (lower == JAVASCRIPT.charAt(urlMatched)) {
+                    if (++urlMatched == JAVASCRIPT.length()) cssUrlFound = true;
+                    return;
+                }
+        }
+        // none of the consumed characters can start a new "url(", only the current one can
+        urlState = URL_NAME;
+        urlMatched = lower == 'u' ? 1 : 0;
+    }
+
+    private boolean startJavascript(char lower) {
+        if (lower != 'j') return false;
+        urlState = URL_JAVASCRIPT;
+        urlMatched = 1;
+        return true;
+    }
+
+    private void scanScriptTag(char c) {
+        char lower = toLowerCase(c);
+        switch (scriptState) {
+            case SCRIPT_AFTER_LESS_THAN:
+                if (isWhitespace(c)) return;
+                if (c == '/') {
+                    scriptState = SCRIPT_AFTER_SLASH;
+                    return;
+                }
+                if (startScript(lower)) return;
+                break;
+            case SCRIPT_AFTER_SLASH:
+                if (isWhitespace(c)) return;
+                if (startScript(lower)) return;
+                break;
+            case SCRIPT_NAME:
+                if (lower == SCRIPT.charAt(scriptMatched)) {
+                    if (++scriptMatched == SCRIPT.length()) scriptState = SCRIPT_AFTER_NAME;
+                    return;
+                }
+                break;
+            case SCRIPT_AFTER_NAME:
+                if (isWhitespace(c) || c == '/' || c == '>') {
+                    scriptTagFound = true;
+                    return;
+                }
+                // "$" also matches in front of a line terminator that ends the input
+                if (c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                    scriptState = SCRIPT_BEFORE_FINAL_LINE_TERMINATOR;
+                    return;
+                }
+                break;
+            default:
+                break;
+        }
+        scriptState = c == '<' ? SCRIPT_AFTER_LESS_THAN : SCRIPT_NONE;
+    }
+
+    private boolean startScript(char lower) {
+        if (lower != 's') return false;
+        scriptState = SCRIPT_NAME;
+        scriptMatched = 1;
+        return true;
+    }
+
+    private void scanXlinkHref(char c) {
+        char lower = toLowerCase(c);
+        switch (xlinkState) {
+            case XLINK_NAME:
+                if (lower == XLINK_HREF.charAt(xlinkMatched)) {
+                    if (++xlinkMatched == XLINK_HREF.length()) xlinkState = XLINK_BEFORE_EQUALS;
+                    return;
+                }
+                break;
+            case XLINK_BEFORE_EQUALS:
+                if (isWhitespace(c)) return;
+                if (c == '=') {
+                    xlinkState = XLINK_AFTER_EQUALS;
+                    return;
+                }
+                break;
+            case XLINK_AFTER_EQUALS:
+                if (isWhitespace(c)) return;
+                if (c == '"' || c == '\'') {
+                    xlinkState = XLINK_AFTER_QUOTE;
+                    return;
+                }
+                if (startJavascriptProtocol(lower)) return;
+                break;
+            case XLINK_AFTER_QUOTE:
+                if (isWhitespace(c)) return;
+                if (startJavascriptProtocol(lower)) return;
+                break;
+            default:
+                if (lower == JAVASCRIPT_PROTOCOL.charAt(xlinkMatched)) {
+                    if (++xlinkMatched == JAVASCRIPT_PROTOCOL.length()) xlinkHrefFound = true;
+                    return;
+                }
+        }
+        xlinkState = XLINK_NAME;
+        xlinkMatched = lower == 'x' ? 1 : 0;
+    }
+
+    private boolean startJavascriptProtocol(char lower) {
+        if (lower != 'j') return false;
+        xlinkState = XLINK_JAVASCRIPT;
+        xlinkMatched = 1;
+        return true;
+    }
+
+    /**
+     * Same set as {@code \s} in {@link java.util.regex.Pattern}.
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private static char toLowerCase(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+}
@@ -0,0 +1,111 @@
+package com.github.bgalek.security.svg;
+
+import org.owasp.html.HtmlSanitizer;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Point in time a validation has to be finished by. Validation runs on the caller's thread, so it is
+ * cancelled cooperatively: every stage checks the deadline at least once per {@value #CHECK_INTERVAL}
+ * characters (or sanitizer event) and stops with {@link ValidationTimeoutException} once it has passed.
+ */
+final class Deadline {
+    static final Deadline NONE = new Deadline(null, Long.MAX_VALUE);
+    static final int CHECK_INTERVAL = 8192;
+
+    private final Duration budget;
+    private final long expiresAt;
+
+    private Deadline(Duration budget, long expiresAt) {
+        this.budget = budget;
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * @param budget time allowed from now on, null for no deadline
+     */
+    static Deadline after(Duration budget) {
+        if (budget == null) return NONE;
+        return new Deadline(budget, System.nanoTime() + budget.toNanos());
+    }
+
+    void check() {
+        if (this != NONE && System.nanoTime() - expiresAt > 0) throw new ValidationTimeoutException(budget);
+    }
+
+    /**
+     * Hands the input to the consumer in chunks, checking the deadline before each one.
+     */
+    void chunked(CharSequence input, Chunks chunks) {
+        for (int start = 0; start < input.length(); start += CHECK_INTERVAL) {
+            check();
+            chunks.accept(start, Math.min(start + CHECK_INTERVAL, input.length()));
+        }
+    }
+
+    interface Chunks {
+        void accept(int start, int end);
+    }
+
+    /**
+     * @return the reader, checking the deadline before every read
+     */
+    Reader guard(Reader input) {
+        if (this == NONE) return input;
+        return new FilterReader(input) {
+            @Override
+            public int read() throws IOException {
+                check();
+                return super.read();
+            }
+
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                check();
+                return super.read(buffer, offset, Math.min(length, CHECK_INTERVAL));
+            }
+        };
+    }
+
+    /**
+     * @return the sanitizer policy, checking the deadline before every event
+     */
+    HtmlSanitizer.Policy guard(HtmlSanitizer.Policy policy) {
+        if (this == NONE) return policy;
+        return new HtmlSanitizer.Policy() {
+            @Override
+            public void openDocument() {
+                check();
+                policy.openDocument();
+            }
+
+            @Override
+            public void closeDocument() {
+                check();
+                policy.closeDocument();
+            }
+
+            @Override
+            public void openTag(String elementName, List<String> attributes) {
+                check();
+                policy.openTag(elementName, attributes);
+            }
+
+            @Override
+            public void closeTag(String elementName) {
+                check();
+                policy.closeTag(elementName);
+            }
+
+            @Override
+            public void text(String text) {
+                check();
+                policy.text(text);
+            }
+        };
+    }
+}
@@ -0,0 +1,42 @@
+package com.github.bgalek.security.svg;
+
+/**
+ * Thrown when the XML prolog of an input declares what the {@link PrologPolicy} configured on
+ * {@link SvgSecurityValidatorBuilder} forbids, before the parser or the sanitizer see the input.
+ */
+public class ForbiddenPrologException extends RuntimeException {
+
+    public enum Reason {
+        DOCTYPE("A DOCTYPE declaration is not allowed"),
+        ENTITY("Entity declarations are not allowed"),
+        EXTERNAL_ENTITY("External entities are not allowed"),
+        PARAMETER_ENTITY("Parameter entities are not allowed"),
+        NESTED_ENTITY("Entity values referencing other entities are not allowed"),
+        ENTITY_COUNT("The number of entity declarations exceeds the limit of ");
+
+        private final String description;
+
+        Reason(String description) {
+            this.description = description;
+        }
+    }
+
+    private final Reason reason;
+
+    ForbiddenPrologException(Reason reason) {
+        super(reason.description);
+        this.reason = reason;
+    }
+
+    ForbiddenPrologException(Reason reason, int maximum) {
+        super(reason.description + maximum);
+        this.reason = reason;
+    }
+
+    /**
+     * @return what the prolog declares that is not allowed
+     */
+    public Reason getReason() {
+        return reason;
+    }
+}
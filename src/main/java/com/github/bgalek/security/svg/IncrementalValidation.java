@@ -0,0 +1,239 @@
+package com.github.bgalek.security.svg;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+/**
+ * Validates UTF-8 encoded svg content pushed to it chunk by chunk, as it arrives, see
+ * {@link SvgSecurityValidator#newIncrementalValidation()}. Chunks are checked right away, so the
+ * content is never held in memory as a whole; a hostile upload can be rejected before it has
+ * been received completely, see {@link #isRejected()}. Verdicts are the same as those of
+ * {@link SvgSecurityValidator#validate(byte[])} for the whole content, wherever it is split; in fail-fast
+ * mode the one violation reported, or whether a syntax error is found first, may depend on the split.
+ * <p>
+ * With syntax validation enabled the XML parser, which pulls its input, runs on the validator's async
+ * executor (see {@link SvgSecurityValidatorBuilder#withAsyncExecutor}) as one of its pending validations
+ * (see {@link SvgSecurityValidatorBuilder#withMaxPendingValidations}), and {@link #feed} waits when the
+ * parser falls a few chunks behind; without it everything runs on the feeding thread. Markup that the
+ * single-pass checks cannot judge exactly like the sanitizer is replayed to the sanitizer, so the content
+ * is kept aside as well: the first characters in memory, the rest in a temporary file that is deleted once
+ * the validation is finished or closed, see {@link SvgSecurityValidator#validate(java.io.InputStream)}.
+ * <p>
+ * Resource limits and the prolog policy apply, the time budget does not: chunks arrive at the pace of the
+ * network. Instances are not thread-safe and are used once; {@link #close()} abandons a validation that is
+ * not finished.
+ */
+public final class IncrementalValidation implements AutoCloseable {
+    private static final int CHUNK_SIZE = 8192;
+
+    private final SinglePassValidator singlePassValidator;
+    private final Function<String, Set<String>> sanitizer;
+    private final ResourceLimits limits;
+    // null when the prolog does not have to be checked
+    private final PrologScanner prolog;
+    private final Probe probe;
+    private final Probe.Timing start;
+    // the inspection runs from the first chunk fed to the last, unless the parser runs it
+    private final Probe.Timing inspectionStart;
+    private final SinglePassValidator.Inspection inspection;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    // bytes of a character split between chunks
+    private final ByteBuffer pending = ByteBuffer.allocate(8);
+    private final CharBuffer chars = CharBuffer.allocate(CHUNK_SIZE);
+    // set when syntax validation runs on the executor
+    private final CharChannel channel;
+    private final CompletableFuture<Set<String>> parsing;
+    private final ReplayBuffer replay = new ReplayBuffer();
+    private long bytesFed;
+    private boolean done;
+
+    IncrementalValidation(SinglePassValidator singlePassValidator, boolean syntaxValidation, Function<String, Set<String>> sanitizer,
+                          ResourceLimits limits, PrologPolicy prologPolicy, Probe probe,
+                          Function<SvgSecurityValidator.AsyncTask<Set<String>>, CompletableFuture<Set<String>>> submitter) {
+        this.singlePassValidator = singlePassValidator;
+        this.sanitizer = sanitizer;
+        this.limits = limits;
+        this.prolog = prologPolicy.newScanner();
+        this.probe = probe;
+        this.start = probe.start();
+        this.inspectionStart = syntaxValidation ? null : probe.startStage();
+        this.inspection = singlePassValidator.newInspection();
+        if (syntaxValidation) {
+            this.channel = new CharChannel();
+            this.parsing = submitter.apply(() -> {
+                try {
+                    return singlePassValidator.getOffendingElements(channel, inspection, this::fallback);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } finally {
+                    channel.readerGone();
+                }
+            });
+            if (parsing.isCompletedExceptionally()) {
+                // too many validations are pending, or the executor rejected the parser
+                try {
+                    parsing.join();
+                } catch (CompletionException e) {
+                    throw (RuntimeException) e.getCause();
+                }
+            }
+        } else {
+            this.channel = null;
+            this.parsing = null;
+        }
+    }
+
+    public void feed(byte[] chunk) {
+        feed(chunk, 0, chunk.length);
+    }
+
+    public void feed(byte[] chunk, int offset, int length) {
+        feed(ByteBuffer.wrap(chunk, offset, length));
+    }
+
+    /**
+     * Feeds the bytes between the buffer's position and limit, the buffer's position is not changed.
+     *
+     * @throws InvalidXMLSyntaxException      as soon as the content is known not to be well-formed
+     * @throws ResourceLimitExceededException as soon as the content crosses a limit
+     * @throws ForbiddenPrologException       as soon as the prolog is known to declare what the policy forbids
+     */
+    public void feed(ByteBuffer chunk) {
+        if (done) throw new IllegalStateException("The validation is already finished");
+        try {
+            bytesFed += chunk.remaining();
+            limits.checkInputSize(bytesFed);
+            decode(chunk.duplicate(), false);
+        } catch (IOException e) {
+            throw fail(new UncheckedIOException(e));
+        } catch (RuntimeException e) {
+            throw fail(e);
+        }
+    }
+
+    /**
+     * @return true once the content is known to be reported with violations, whatever follows; the rest
+     * of it does not have to be received, call {@link #finish()} for the violations found so far
+     */
+    public boolean isRejected() {
+        return inspection.isRejected();
+    }
+
+    /**
+     * Signals the end of the content.
+     *
+     * @return {@link ValidationResult}
+     * @throws InvalidXMLSyntaxException      when syntax validation is enabled and the content is not well-formed
+     * @throws ResourceLimitExceededException when the content crosses a limit
+     */
+    public ValidationResult finish() {
+        if (done) throw new IllegalStateException("The validation is already finished");
+        try {
+            decode(ByteBuffer.allocate(0), true);
+            Set<String> offendingElements;
+            if (parsing != null) {
+                channel.end();
+                offendingElements = parsing.join();
+            } else {
+                offendingElements = singlePassValidator.finish(inspection, this::fallback, inspectionStart);
+            }
+            done = true;
+            replay.close();
+            ValidationResult result = offendingElements.isEmpty() ? new NegativeValidationResult()
+                    : new PositiveValidationResult(offendingElements);
+            return probe.validationCompleted(result, bytesFed, start);
+        } catch (IOException e) {
+            throw fail(new UncheckedIOException(e));
+        } catch (RuntimeException e) {
+            throw fail(e);
+        }
+    }
+
+    /**
+     * Abandons the validation unless it is finished, the parser stops without waiting for more content.
+     */
+    @Override
+    public void close() {
+        if (done) return;
+        done = true;
+        if (channel != null) channel.abandon();
+        replay.close();
+    }
+
+    private RuntimeException fail(RuntimeException failure) {
+        // failures of the parser are rethrown as they are
+        if (failure instanceof CompletionException && failure.getCause() instanceof RuntimeException) {
+            failure = (RuntimeException) failure.getCause();
+        }
+        if (!done) {
+            close();
+            probe.validationFailed(failure, bytesFed, start);
+        }
+        return failure;
+    }
+
+    private Set<String> fallback(Set<String> approximation) throws IOException {
+        return sanitizer.apply(replay.contents());
+    }
+
+    private void decode(ByteBuffer input, boolean endOfInput) throws IOException {
+        // complete a character split at the previous chunk boundary one byte at a time
+        while (pending.position() > 0 && input.hasRemaining()) {
+            pending.put(input.get());
+            pending.flip();
+            decode(pending, false, false);
+            pending.compact();
+        }
+        if (pending.position() > 0) {
+            if (!endOfInput) return;
+            pending.flip();
+            decode(pending, true, false);
+            pending.clear();
+        }
+        decode(input, endOfInput, endOfInput);
+        pending.put(input);
+    }
+
+    private void decode(ByteBuffer input, boolean endOfInput, boolean flush) throws IOException {
+        while (true) {
+            CoderResult result = decoder.decode(input, chars, endOfInput);
+            push();
+            if (result.isUnderflow()) break;
+        }
+        if (flush) {
+            while (decoder.flush(chars).isOverflow()) {
+                push();
+            }
+            push();
+        }
+    }
+
+    private void push() throws IOException {
+        chars.flip();
+        int length = chars.remaining();
+        if (prolog != null && !prolog.isDone()) prolog.scan(chars.array(), chars.position(), length);
+        if (length > 0 && !(parsing == null && inspection.isDecided())) {
+            replay.append(chars.array(), chars.position(), length);
+            if (parsing != null) {
+                channel.write(Arrays.copyOfRange(chars.array(), chars.position(), chars.limit()));
+                if (parsing.isCompletedExceptionally()) parsing.join();
+            } else {
+                inspection.feed(chars.array(), chars.position(), length);
+            }
+        }
+        chars.clear();
+    }
+}
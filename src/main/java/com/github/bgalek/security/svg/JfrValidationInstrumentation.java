@@ -0,0 +1,186 @@
+package com.github.bgalek.security.svg;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@link ValidationInstrumentation} that commits Java Flight Recorder events, so slow documents and
+ * stages show up in recordings under the "SVG Security" category:
+ * <ul>
+ * <li>{@value #VALIDATION_EVENT} for every validation, with the input size, the verdict, and the offending
+ * elements or the failure</li>
+ * <li>{@value #STAGE_EVENT} for every stage of a validation, with the stage and the chars it read</li>
+ * </ul>
+ * Events begin in {@link #validationStarted()} and {@link #stageStarted()} and are committed when the
+ * validation or stage ends, so their start times and durations are those of the work they record.
+ * The JFR API is loaded reflectively, this library targets Java 8; on runtimes without it the
+ * instrumentation does nothing, see {@link #isAvailable()}. Events that are not enabled in a running
+ * recording cost an enabled check and nothing more.
+ */
+public final class JfrValidationInstrumentation implements ValidationInstrumentation {
+    public static final String VALIDATION_EVENT = "com.github.bgalek.security.svg.Validation";
+    public static final String STAGE_EVENT = "com.github.bgalek.security.svg.ValidationStage";
+    private static final String CATEGORY = "SVG Security";
+
+    private static final EventType VALIDATION;
+    private static final EventType STAGE;
+
+    static {
+        EventType validation = null;
+        EventType stage = null;
+        try {
+            Jfr jfr = new Jfr();
+            validation = jfr.eventType(VALIDATION_EVENT, "SVG Validation",
+                    jfr.field(long.class, "inputSize", "Input Size"),
+                    jfr.field(String.class, "verdict", "Verdict"),
+                    jfr.field(String.class, "offendingElements", "Offending Elements"),
+                    jfr.field(String.class, "failure", "Failure"));
+            stage = jfr.eventType(STAGE_EVENT, "SVG Validation Stage",
+                    jfr.field(String.class, "stage", "Stage"),
+                    jfr.field(long.class, "inputSize", "Input Size"));
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            // no Flight Recorder on this runtime
+            validation = null;
+            stage = null;
+        }
+        VALIDATION = validation;
+        STAGE = stage;
+    }
+
+    /**
+     * @return true when the runtime has Flight Recorder and the events are registered
+     */
+    public static boolean isAvailable() {
+        return VALIDATION != null;
+    }
+
+    /**
+     * @return the begun event, null when it is not enabled
+     */
+    @Override
+    public Object validationStarted() {
+        return VALIDATION != null ? VALIDATION.begin() : null;
+    }
+
+    /**
+     * @return the begun event, null when it is not enabled
+     */
+    @Override
+    public Object stageStarted() {
+        return STAGE != null ? STAGE.begin() : null;
+    }
+
+    @Override
+    public void stageCompleted(Object started, Stage stage, long inputSize, long nanos) {
+        if (started != null) STAGE.commit(started, stage.name(), inputSize);
+    }
+
+    @Override
+    public void validationCompleted(Object started, long inputSize, long nanos, ValidationResult result) {
+        if (started != null) VALIDATION.commit(started, inputSize, result.hasViolations() ? "violations" : "clean",
+                String.join(",", result.getOffendingElements()), null);
+    }
+
+    @Override
+    public void validationFailed(Object started, long inputSize, long nanos, Exception failure) {
+        if (started != null) VALIDATION.commit(started, inputSize, "failed", null, failure.getClass().getName());
+    }
+
+    /**
+     * Event type created through {@code jdk.jfr.EventFactory}, with handles bound to it.
+     */
+    private static final class EventType {
+        private final MethodHandle isEnabled;
+        private final MethodHandle newEvent;
+        private final MethodHandle begin;
+        private final MethodHandle set;
+        private final MethodHandle end;
+        private final MethodHandle commit;
+
+        private EventType(MethodHandle isEnabled, MethodHandle newEvent, MethodHandle begin, MethodHandle set,
+                          MethodHandle end, MethodHandle commit) {
+            this.isEnabled = isEnabled;
+            this.newEvent = newEvent;
+            this.begin = begin;
+            this.set = set;
+            this.end = end;
+            this.commit = commit;
+        }
+
+        /**
+         * @return a new event, begun now, or null when the event type is not enabled
+         */
+        private Object begin() {
+            try {
+                if (!(boolean) isEnabled.invokeExact()) return null;
+                Object event = newEvent.invokeExact();
+                begin.invokeExact(event);
+                return event;
+            } catch (Throwable e) {
+                return null;
+            }
+        }
+
+        private void commit(Object event, Object... values) {
+            try {
+                end.invokeExact(event);
+                for (int i = 0; i < values.length; i++) {
+                    set.invokeExact(event, i, values[i]);
+                }
+                commit.invokeExact(event);
+            } catch (Throwable e) {
+                // instrumentation must not fail validations
+            }
+        }
+    }
+
+    /**
+     * The parts of the {@code jdk.jfr} API needed to define events at runtime.
+     */
+    private static final class Jfr {
+        private final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        private final Class<?> annotationElement = Class.forName("jdk.jfr.AnnotationElement");
+        private final Class<?> valueDescriptor = Class.forName("jdk.jfr.ValueDescriptor");
+        private final Class<?> eventFactory = Class.forName("jdk.jfr.EventFactory");
+        private final Class<?> eventTypeClass = Class.forName("jdk.jfr.EventType");
+        private final Class<?> event = Class.forName("jdk.jfr.Event");
+
+        private Jfr() throws ClassNotFoundException {
+        }
+
+        private EventType eventType(String name, String label, Object... fields) throws ReflectiveOperationException {
+            List<Object> annotations = Arrays.asList(annotation("jdk.jfr.Name", name), annotation("jdk.jfr.Label", label),
+                    annotation("jdk.jfr.Category", new String[]{CATEGORY}));
+            Object factory = eventFactory.getMethod("create", List.class, List.class)
+                    .invoke(null, annotations, Arrays.asList(fields));
+            Object eventType = eventFactory.getMethod("getEventType").invoke(factory);
+            return new EventType(
+                    lookup.findVirtual(eventTypeClass, "isEnabled", MethodType.methodType(boolean.class)).bindTo(eventType),
+                    lookup.findVirtual(eventFactory, "newEvent", MethodType.methodType(event)).bindTo(factory)
+                            .asType(MethodType.methodType(Object.class)),
+                    eventMethod("begin"),
+                    lookup.findVirtual(event, "set", MethodType.methodType(void.class, int.class, Object.class))
+                            .asType(MethodType.methodType(void.class, Object.class, int.class, Object.class)),
+                    eventMethod("end"),
+                    eventMethod("commit"));
+        }
+
+        private MethodHandle eventMethod(String name) throws ReflectiveOperationException {
+            return lookup.findVirtual(event, name, MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(void.class, Object.class));
+        }
+
+        private Object field(Class<?> type, String name, String label) throws ReflectiveOperationException {
+            List<Object> annotations = Collections.singletonList(annotation("jdk.jfr.Label", label));
+            return valueDescriptor.getConstructor(Class.class, String.class, List.class).newInstance(type, name, annotations);
+        }
+
+        private Object annotation(String type, Object value) throws ReflectiveOperationException {
+            return annotationElement.getConstructor(Class.class, Object.class).newInstance(Class.forName(type), value);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.github.bgalek.security.svg;
+
+/**
+ * Immutable set of element or attribute names compiled for lookups straight from the tokenizer's
+ * buffers. Names are matched the way the sanitizer matches them: it lower-cases every name except
+ * namespaced ones and the mixed-case SVG and MathML names HTML keeps as written, so
+ * {@code foreignObject} is kept while {@code FOREIGNOBJECT} becomes {@code foreignobject}. Lookups
+ * fold case on the fly and do not allocate.
+ * <p>
+ * Open addressing with linear probing over a table at most half full, so a miss usually ends at the
+ * first empty slot.
+ */
+final class NameSet {
+    private static final NameSet MIXED_CASE_ELEMENTS = new NameSet(null,
+            "animateColor", "animateMotion", "animateTransform", "clipPath", "feBlend", "feColorMatrix",
+            "feComponentTransfer", "feComposite", "feConvolveMatrix", "feDiffuseLighting", "feDisplacementMap",
+            "feDistantLight", "feDropShadow", "feFlood", "feFuncA", "feFuncB", "feFuncG", "feFuncR",
+            "feGaussianBlur", "feImage", "feMerge", "feMergeNode", "feMorphology", "feOffset", "fePointLight",
+            "feSpecularLighting", "feSpotLight", "feTile", "feTurbulence", "foreignObject", "linearGradient",
+            "radialGradient", "solidColor", "textArea", "textPath");
+    private static final NameSet MIXED_CASE_ATTRIBUTES = new NameSet(null,
+            "attributeName", "attributeType", "baseFrequency", "baseProfile", "calcMode", "clipPathUnits",
+            "contentScriptType", "defaultAction", "definitionURL", "diffuseConstant", "edgeMode",
+            "externalResourcesRequired", "filterUnits", "focusHighlight", "gradientTransform", "gradientUnits",
+            "initialVisibility", "kernelMatrix", "kernelUnitLength", "keyPoints", "keySplines", "keyTimes",
+            "lengthAdjust", "limitingConeAngle", "markerHeight", "markerUnits", "markerWidth", "maskContentUnits",
+            "maskUnits", "mediaCharacterEncoding", "mediaContentEncodings", "mediaSize", "mediaTime", "numOctaves",
+            "pathLength", "patternContentUnits", "patternTransform", "patternUnits", "playbackOrder", "pointsAtX",
+            "pointsAtY", "pointsAtZ", "preserveAlpha", "preserveAspectRatio", "primitiveUnits", "refX", "refY",
+            "repeatCount", "repeatDur", "requiredExtensions", "requiredFeatures", "requiredFonts", "requiredFormats",
+            "schemaLocation", "snapshotTime", "specularConstant", "specularExponent", "spreadMethod", "startOffset",
+            "stdDeviation", "stitchTiles", "surfaceScale", "syncBehavior", "syncBehaviorDefault", "syncMaster",
+            "syncTolerance", "syncToleranceDefault", "systemLanguage", "tableValues", "targetX", "targetY",
+            "textLength", "timelineBegin", "transformBehavior", "viewBox", "xChannelSelector", "yChannelSelector",
+            "zoomAndPan");
+    private static final NameSet NO_NAMES = new NameSet(null);
+
+    private final String[] table;
+    private final int mask;
+    // names matched exactly as written, null when nothing is folded at all
+    private final NameSet keptCase;
+
+    private NameSet(NameSet keptCase, String... names) {
+        this.keptCase = keptCase;
+        int capacity = Integer.highestOneBit(Math.max(names.length, 1) * 4 - 1);
+        this.table = new String[capacity];
+        this.mask = capacity - 1;
+        for (String name : names) {
+            String canonical = canonicalName(name);
+            int slot = hash(canonical) & capacity - 1;
+            while (table[slot] != null && !table[slot].equals(canonical)) {
+                slot = slot + 1 & capacity - 1;
+            }
+            table[slot] = canonical;
+        }
+    }
+
+    /**
+     * Names compared ASCII case-insensitively unless they are namespaced.
+     */
+    static NameSet of(String... names) {
+        return new NameSet(NO_NAMES, names);
+    }
+
+    /**
+     * Element names, compared the way the sanitizer compares tag names.
+     */
+    static NameSet elements(String... names) {
+        return new NameSet(MIXED_CASE_ELEMENTS, names);
+    }
+
+    /**
+     * Attribute names, compared the way the sanitizer compares attribute names.
+     */
+    static NameSet attributes(String... names) {
+        return new NameSet(MIXED_CASE_ATTRIBUTES, names);
+    }
+
+    /**
+     * @return the name as the sanitizer reports it
+     */
+    String canonicalName(CharSequence name) {
+        if (!foldsCase(name, 0, name.length())) return name.toString();
+        return SvgTokenizer.toLowerCase(name);
+    }
+
+    /**
+     * @return hash of the name as the sanitizer reports it, equal to {@link #hash(String)} of
+     * {@link #canonicalName(CharSequence)}
+     */
+    int canonicalHash(CharSequence name) {
+        return hash(name, 0, name.length(), foldsCase(name, 0, name.length()));
+    }
+
+    /**
+     * @return true when {@code canonical} is the name as the sanitizer reports it
+     */
+    boolean isCanonicalName(String canonical, CharSequence name) {
+        return matches(canonical, name, 0, name.length(), foldsCase(name, 0, name.length()));
+    }
+
+    boolean contains(CharSequence name) {
+        return get(name) != null;
+    }
+
+    /**
+     * @return true when the characters between {@code start} and {@code end} are one of the names
+     */
+    boolean contains(CharSequence chars, int start, int end) {
+        return get(chars, start, end) != null;
+    }
+
+    /**
+     * @return the canonical name held by this set the name matches, or null
+     */
+    String get(CharSequence name) {
+        return get(name, 0, name.length());
+    }
+
+    private String get(CharSequence chars, int start, int end) {
+        boolean foldCase = foldsCase(chars, start, end);
+        for (int slot = hash(chars, start, end, foldCase) & mask; table[slot] != null; slot = slot + 1 & mask) {
+            if (matches(table[slot], chars, start, end, foldCase)) return table[slot];
+        }
+        return null;
+    }
+
+    private boolean foldsCase(CharSequence chars, int start, int end) {
+        if (keptCase == null) return false;
+        for (int i = start; i < end; i++) {
+            if (chars.charAt(i) == ':') return false;
+        }
+        return !keptCase.contains(chars, start, end);
+    }
+
+    static int hash(String canonical) {
+        // canonical names are already folded
+        return hash(canonical, 0, canonical.length(), false);
+    }
+
+    private static int hash(CharSequence chars, int start, int end, boolean foldCase) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            char c = chars.charAt(i);
+            hash = 31 * hash + (foldCase ? SvgTokenizer.toLowerCase(c) : c);
+        }
+        // spread the high bits, tables are small
+        return hash ^ hash >>> 16;
+    }
+
+    private static boolean matches(String canonical, CharSequence chars, int start, int end, boolean foldCase) {
+        if (canonical.length() != end - start) return false;
+        for (int i = 0; i < canonical.length(); i++) {
+            char c = chars.charAt(start + i);
+            if (canonical.charAt(i) != (foldCase ? SvgTokenizer.toLowerCase(c) : c)) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,118 @@
+package com.github.bgalek.security.svg;
+
+import com.github.bgalek.security.svg.ValidationInstrumentation.Stage;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Reports to the configured {@link ValidationInstrumentation}. Without one nothing is measured, the
+ * clock is not even read.
+ */
+final class Probe {
+    static final Probe NONE = new Probe(null);
+
+    private final ValidationInstrumentation instrumentation;
+
+    private Probe(ValidationInstrumentation instrumentation) {
+        this.instrumentation = instrumentation;
+    }
+
+    static Probe of(List<ValidationInstrumentation> instrumentations) {
+        if (instrumentations.isEmpty()) return NONE;
+        return new Probe(instrumentations.size() == 1 ? instrumentations.get(0) : new CompositeInstrumentation(instrumentations));
+    }
+
+    /**
+     * @return the start of a validation, to pass to {@link #validationCompleted} or {@link #validationFailed}
+     */
+    Timing start() {
+        if (instrumentation == null) return Timing.NONE;
+        return new Timing(instrumentation.validationStarted(), System.nanoTime());
+    }
+
+    /**
+     * @return the start of a stage, to pass to {@link #stageCompleted}
+     */
+    Timing startStage() {
+        if (instrumentation == null) return Timing.NONE;
+        return new Timing(instrumentation.stageStarted(), System.nanoTime());
+    }
+
+    /**
+     * @param inputSize chars the stage read
+     */
+    void stageCompleted(Stage stage, long inputSize, Timing start) {
+        if (instrumentation != null) instrumentation.stageCompleted(start.started, stage, inputSize, System.nanoTime() - start.nanos);
+    }
+
+    ValidationResult validationCompleted(ValidationResult result, long inputSize, Timing start) {
+        if (instrumentation != null) instrumentation.validationCompleted(start.started, inputSize, System.nanoTime() - start.nanos, result);
+        return result;
+    }
+
+    <E extends Exception> E validationFailed(E failure, long inputSize, Timing start) {
+        if (instrumentation != null) instrumentation.validationFailed(start.started, inputSize, System.nanoTime() - start.nanos, failure);
+        return failure;
+    }
+
+    /**
+     * When a validation or stage started, and what the instrumentation returned then.
+     */
+    static final class Timing {
+        private static final Timing NONE = new Timing(null, 0);
+
+        private final Object started;
+        private final long nanos;
+
+        private Timing(Object started, long nanos) {
+            this.started = started;
+            this.nanos = nanos;
+        }
+    }
+
+    /**
+     * @return the stream, counting the bytes read from it when instrumented
+     */
+    InputStream count(InputStream input) {
+        return instrumentation == null ? input : new CountingInputStream(input);
+    }
+
+    /**
+     * @return bytes read so far from a stream returned by {@link #count(InputStream)}, -1 when not counted
+     */
+    static long bytesRead(InputStream input) {
+        return input instanceof CountingInputStream ? ((CountingInputStream) input).count : -1;
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        private CountingInputStream(InputStream input) {
+            super(input);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) count += read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.github.bgalek.security.svg;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * What the XML prolog of an input may declare, see {@link SvgSecurityValidatorBuilder#withPrologPolicy}.
+ * Unless DOCTYPE declarations are allowed without restrictions, the prolog is checked by a small scanner
+ * before the parser or the sanitizer run, so entity-expansion and external-entity documents are turned
+ * away with {@link ForbiddenPrologException} at the cost of reading their first few lines.
+ */
+public final class PrologPolicy {
+    private static final PrologPolicy ALLOW_DOCTYPE = new PrologPolicy(false, Integer.MAX_VALUE);
+    private static final PrologPolicy FORBID_ENTITIES = new PrologPolicy(false, 0);
+    private static final PrologPolicy FORBID_DOCTYPE = new PrologPolicy(true, 0);
+
+    private final boolean forbidsDoctype;
+    private final int maxEntities;
+
+    private PrologPolicy(boolean forbidsDoctype, int maxEntities) {
+        this.forbidsDoctype = forbidsDoctype;
+        this.maxEntities = maxEntities;
+    }
+
+    /**
+     * Allows any DOCTYPE, the default. Entities are left to the hardened parser of syntax validation,
+     * which neither resolves external ones nor expands references, and to the sanitizer, which ignores them.
+     */
+    public static PrologPolicy allowDoctype() {
+        return ALLOW_DOCTYPE;
+    }
+
+    /**
+     * Allows a DOCTYPE with up to {@code maxEntities} internal entities whose values do not reference
+     * other entities. External and parameter entities are forbidden. External DTDs may still be named,
+     * they are never loaded.
+     */
+    public static PrologPolicy allowInternalEntities(int maxEntities) {
+        if (maxEntities <= 0) throw new IllegalArgumentException("maxEntities must be positive: " + maxEntities);
+        return new PrologPolicy(false, maxEntities);
+    }
+
+    /**
+     * Allows a DOCTYPE that declares no entities.
+     */
+    public static PrologPolicy forbidEntities() {
+        return FORBID_ENTITIES;
+    }
+
+    /**
+     * Forbids DOCTYPE declarations altogether.
+     */
+    public static PrologPolicy forbidDoctype() {
+        return FORBID_DOCTYPE;
+    }
+
+    boolean forbidsDoctype() {
+        return forbidsDoctype;
+    }
+
+    boolean forbidsEntities() {
+        return maxEntities == 0;
+    }
+
+    int maxEntities() {
+        return maxEntities;
+    }
+
+    /**
+     * Scans the prolog at the start of the input.
+     */
+    void check(CharSequence input) {
+        if (this == ALLOW_DOCTYPE) return;
+        new PrologScanner(this).scan(input, 0, input.length());
+    }
+
+    /**
+     * @return a scanner for input that arrives in chunks, null when nothing has to be checked
+     */
+    PrologScanner newScanner() {
+        return this == ALLOW_DOCTYPE ? null : new PrologScanner(this);
+    }
+
+    /**
+     * @return the reader, scanning the prolog as it is read
+     */
+    Reader guard(Reader input) {
+        PrologScanner scanner = newScanner();
+        if (scanner == null) return input;
+        return new FilterReader(input) {
+            @Override
+            public int read() throws IOException {
+                int c = super.read();
+                if (c != -1) scanner.scan((char) c);
+                return c;
+            }
+
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                int read = super.read(buffer, offset, length);
+                if (read > 0 && !scanner.isDone()) scanner.scan(buffer, offset, read);
+                return read;
+            }
+        };
+    }
+}
@@ -0,0 +1,287 @@
+package com.github.bgalek.security.svg;
+
+import com.github.bgalek.security.svg.ForbiddenPrologException.Reason;
+
+/**
+ * Checks the XML prolog, everything before the root element, against a {@link PrologPolicy} in one
+ * left-to-right pass, without allocating. Only the declarations that matter are recognised:
+ * processing instructions and comments are skipped, a DOCTYPE is tracked through its quoted literals
+ * and internal subset, and entity declarations are taken apart far enough to tell internal from external
+ * ones and to find references in their values. Scanning stops at the root element, or at anything else
+ * that cannot be part of a prolog, which is left to the parser to reject.
+ * <p>
+ * Entity values are replaced into documents and parsed again, so a value may not reference other
+ * entities, not even through a character reference to {@code &} or {@code %}; that is what keeps
+ * expansion linear. Parameter entities are rejected outright. Input may be fed in arbitrary chunks.
+ */
+final class PrologScanner {
+    private static final String DOCTYPE = "DOCTYPE";
+    private static final String ENTITY = "ENTITY";
+    private static final int MAX_CODE_POINT = 0x110000;
+
+    private static final int PROLOG = 0;
+    private static final int MARKUP = 1;
+    private static final int PROCESSING_INSTRUCTION = 2;
+    private static final int PROCESSING_INSTRUCTION_END = 3;
+    private static final int BANG = 4;
+    private static final int COMMENT_START = 5;
+    private static final int COMMENT = 6;
+    private static final int COMMENT_DASH = 7;
+    private static final int COMMENT_END = 8;
+    private static final int DOCTYPE_NAME = 9;
+    private static final int DOCTYPE_BODY = 10;
+    private static final int SUBSET = 11;
+    private static final int SUBSET_MARKUP = 12;
+    private static final int SUBSET_BANG = 13;
+    private static final int ENTITY_KEYWORD = 14;
+    private static final int ENTITY_BEFORE_NAME = 15;
+    private static final int ENTITY_NAME = 16;
+    private static final int ENTITY_BEFORE_VALUE = 17;
+    private static final int ENTITY_VALUE = 18;
+    private static final int REFERENCE = 19;
+    private static final int CHARACTER_REFERENCE = 20;
+    private static final int DECIMAL_REFERENCE = 21;
+    private static final int HEXADECIMAL_REFERENCE = 22;
+    private static final int DECLARATION = 23;
+    private static final int DONE = 24;
+
+    private final PrologPolicy policy;
+    private int state = PROLOG;
+    // PROLOG or SUBSET, where comments and processing instructions return to
+    private int context = PROLOG;
+    private int matched;
+    private char quote;
+    private int code;
+    private int entities;
+
+    PrologScanner(PrologPolicy policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * @return true once the prolog has been read, the rest of the input does not need to be fed
+     */
+    boolean isDone() {
+        return state == DONE;
+    }
+
+    void scan(CharSequence input, int start, int end) {
+        for (int i = start; i < end && state != DONE; i++) {
+            scan(input.charAt(i));
+        }
+    }
+
+    void scan(char[] chars, int offset, int length) {
+        for (int i = offset, end = offset + length; i < end && state != DONE; i++) {
+            scan(chars[i]);
+        }
+    }
+
+    void scan(char c) {
+        switch (state) {
+            case PROLOG:
+                if (c == '<') state = MARKUP;
+                else if (!isWhitespace(c) && c != '\uFEFF') state = DONE;
+                break;
+            case MARKUP:
+                if (c == '?') state = PROCESSING_INSTRUCTION;
+                else if (c == '!') state = BANG;
+                else state = DONE;
+                break;
+            case PROCESSING_INSTRUCTION:
+                if (c == '?') state = PROCESSING_INSTRUCTION_END;
+                break;
+            case PROCESSING_INSTRUCTION_END:
+                if (c == '>') state = context;
+                else if (c != '?') state = PROCESSING_INSTRUCTION;
+                break;
+            case BANG:
+                if (c == '-') {
+                    state = COMMENT_START;
+                } else if (matches(c, DOCTYPE, 0)) {
+                    matched = 1;
+                    state = DOCTYPE_NAME;
+                } else {
+                    state = DONE;
+                }
+                break;
+            case COMMENT_START:
+                if (c == '-') state = COMMENT;
+                else state = context == SUBSET ? DECLARATION : DONE;
+                break;
+            case COMMENT:
+                if (c == '-') state = COMMENT_DASH;
+                break;
+            case COMMENT_DASH:
+                state = c == '-' ? COMMENT_END : COMMENT;
+                break;
+            case COMMENT_END:
+                if (c == '>') state = context;
+                else if (c != '-') state = COMMENT;
+                break;
+            case DOCTYPE_NAME:
+                if (!matches(c, DOCTYPE, matched)) {
+                    state = DONE;
+                } else if (++matched == DOCTYPE.length()) {
+                    if (policy.forbidsDoctype()) throw new ForbiddenPrologException(Reason.DOCTYPE);
+                    quote = 0;
+                    state = DOCTYPE_BODY;
+                }
+                break;
+            case DOCTYPE_BODY:
+                if (quote != 0) {
+                    if (c == quote) quote = 0;
+                } else if (c == '"' || c == '\'') {
+                    quote = c;
+                } else if (c == '[') {
+                    context = SUBSET;
+                    state = SUBSET;
+                } else if (c == '>') {
+                    // a document has one DOCTYPE at most, nothing that follows can declare entities
+                    state = DONE;
+                }
+                break;
+            case SUBSET:
+                if (c == ']') {
+                    context = PROLOG;
+                    state = DOCTYPE_BODY;
+                } else if (c == '<') {
+                    state = SUBSET_MARKUP;
+                } else if (c == '%') {
+                    throw new ForbiddenPrologException(Reason.PARAMETER_ENTITY);
+                }
+                break;
+            case SUBSET_MARKUP:
+                if (c == '?') state = PROCESSING_INSTRUCTION;
+                else if (c == '!') state = SUBSET_BANG;
+                else declaration(c);
+                break;
+            case SUBSET_BANG:
+                if (c == '-') {
+                    state = COMMENT_START;
+                } else if (matches(c, ENTITY, 0)) {
+                    matched = 1;
+                    state = ENTITY_KEYWORD;
+                } else {
+                    declaration(c);
+                }
+                break;
+            case ENTITY_KEYWORD:
+                if (!matches(c, ENTITY, matched)) {
+                    declaration(c);
+                } else if (++matched == ENTITY.length()) {
+                    if (policy.forbidsEntities()) throw new ForbiddenPrologException(Reason.ENTITY);
+                    if (++entities > policy.maxEntities()) {
+                        throw new ForbiddenPrologException(Reason.ENTITY_COUNT, policy.maxEntities());
+                    }
+                    state = ENTITY_BEFORE_NAME;
+                }
+                break;
+            case ENTITY_BEFORE_NAME:
+                if (c == '%') throw new ForbiddenPrologException(Reason.PARAMETER_ENTITY);
+                if (!isWhitespace(c)) entityName(c);
+                break;
+            case ENTITY_NAME:
+                if (isWhitespace(c)) state = ENTITY_BEFORE_VALUE;
+                else entityName(c);
+                break;
+            case ENTITY_BEFORE_VALUE:
+                if (c == '"' || c == '\'' || c == '>') {
+                    entityName(c);
+                } else if (!isWhitespace(c)) {
+                    // SYSTEM or PUBLIC, whatever follows the name that is not a literal refers to an external entity
+                    throw new ForbiddenPrologException(Reason.EXTERNAL_ENTITY);
+                }
+                break;
+            case ENTITY_VALUE:
+                if (c == quote) {
+                    quote = 0;
+                    state = DECLARATION;
+                } else if (c == '%') {
+                    throw new ForbiddenPrologException(Reason.NESTED_ENTITY);
+                } else if (c == '&') {
+                    state = REFERENCE;
+                }
+                break;
+            case REFERENCE:
+                if (c != '#') throw new ForbiddenPrologException(Reason.NESTED_ENTITY);
+                state = CHARACTER_REFERENCE;
+                break;
+            case CHARACTER_REFERENCE:
+                code = 0;
+                if (c == 'x') {
+                    matched = 0;
+                    state = HEXADECIMAL_REFERENCE;
+                } else {
+                    matched = 0;
+                    state = DECIMAL_REFERENCE;
+                    characterReference(c, 10);
+                }
+                break;
+            case DECIMAL_REFERENCE:
+                characterReference(c, 10);
+                break;
+            case HEXADECIMAL_REFERENCE:
+                characterReference(c, 16);
+                break;
+            case DECLARATION:
+                if (quote != 0) {
+                    if (c == quote) quote = 0;
+                } else if (c == '"' || c == '\'') {
+                    quote = c;
+                } else if (c == '>') {
+                    state = SUBSET;
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Reads a char of an entity name, or the char that ends it.
+     */
+    private void entityName(char c) {
+        if (c == '"' || c == '\'') {
+            quote = c;
+            state = ENTITY_VALUE;
+        } else if (c == '>') {
+            state = SUBSET;
+        } else {
+            state = ENTITY_NAME;
+        }
+    }
+
+    /**
+     * Skips a declaration other than an entity, starting with the given char.
+     */
+    private void declaration(char c) {
+        quote = c == '"' || c == '\'' ? c : 0;
+        state = c == '>' ? SUBSET : DECLARATION;
+    }
+
+    /**
+     * Reads a digit of a character reference, {@code matched} counts the digits. References to {@code &}
+     * or {@code %}, or anything that is not a proper character reference, may smuggle in an entity reference.
+     */
+    private void characterReference(char c, int radix) {
+        int digit = Character.digit(c, radix);
+        if (digit >= 0 && c < 0x80) {
+            code = Math.min(code * radix + digit, MAX_CODE_POINT);
+            matched++;
+        } else if (c == ';' && matched > 0 && code != '&' && code != '%') {
+            state = ENTITY_VALUE;
+        } else {
+            throw new ForbiddenPrologException(Reason.NESTED_ENTITY);
+        }
+    }
+
+    private static boolean matches(char c, String keyword, int index) {
+        // the parser rejects lower case keywords, but lenient consumers of the content may not
+        return Character.toUpperCase(c) == keyword.charAt(index);
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+    }
+}
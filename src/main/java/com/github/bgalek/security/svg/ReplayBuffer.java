@@ -0,0 +1,88 @@
+package com.github.bgalek.security.svg;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Keeps the characters of a streamed input so they can be handed to the sanitizer once the input has
+ * been read, see {@link SvgSecurityValidator#validate(java.io.InputStream)}. The first characters are
+ * kept in memory, the rest is spilled to a temporary file, so memory use does not grow with the input
+ * until the content is actually replayed. {@link #close()} deletes the file.
+ * <p>
+ * Characters are spilled as UTF-16 code units, so whatever was appended is replayed unchanged.
+ */
+final class ReplayBuffer implements Closeable {
+    static final int MAX_BUFFERED_CHARS = 1 << 16;
+
+    private final StringBuilder buffered = new StringBuilder();
+    private final ByteBuffer spillBuffer = ByteBuffer.allocate(8192);
+    private final CharBuffer spillChars = spillBuffer.asCharBuffer();
+    private Path spillFile;
+    private FileChannel spill;
+
+    void append(char[] chars, int offset, int length) throws IOException {
+        if (spill == null && buffered.length() + length <= MAX_BUFFERED_CHARS) {
+            buffered.append(chars, offset, length);
+            return;
+        }
+        if (spill == null) {
+            spillFile = Files.createTempFile("svg-replay", ".tmp");
+            spill = FileChannel.open(spillFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        while (length > 0) {
+            int count = Math.min(length, spillChars.capacity());
+            spillChars.clear();
+            spillChars.put(chars, offset, count);
+            spillBuffer.clear();
+            spillBuffer.limit(count * 2);
+            while (spillBuffer.hasRemaining()) {
+                spill.write(spillBuffer);
+            }
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * @return everything appended so far
+     */
+    String contents() throws IOException {
+        if (spill == null) return buffered.toString();
+        long spilled = spill.size();
+        if (buffered.length() + spilled / 2 > Integer.MAX_VALUE - 8) {
+            throw new IOException("Content of " + (buffered.length() + spilled / 2) + " characters cannot be replayed");
+        }
+        StringBuilder content = new StringBuilder((int) (buffered.length() + spilled / 2)).append(buffered);
+        ByteBuffer bytes = ByteBuffer.allocate(spillBuffer.capacity());
+        for (long position = 0; position < spilled; ) {
+            bytes.clear();
+            int read = spill.read(bytes, position);
+            if (read < 0) break;
+            position += read;
+            bytes.flip();
+            // an odd byte out is read again with the next block
+            bytes.limit(bytes.limit() & ~1);
+            position -= read & 1;
+            content.append(bytes.asCharBuffer());
+        }
+        return content.toString();
+    }
+
+    @Override
+    public void close() {
+        if (spill == null) return;
+        try {
+            spill.close();
+            Files.deleteIfExists(spillFile);
+        } catch (IOException e) {
+            spillFile.toFile().deleteOnExit();
+        }
+        spill = null;
+    }
+}
@@ -0,0 +1,42 @@
+package com.github.bgalek.security.svg;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Copies the characters read through it to a {@link ReplayBuffer}, so streamed inputs can be handed
+ * to the sanitizer after they were read.
+ */
+final class ReplayReader extends FilterReader {
+    private final ReplayBuffer replay;
+
+    ReplayReader(Reader input, ReplayBuffer replay) {
+        super(input);
+        this.replay = replay;
+    }
+
+    @Override
+    public int read() throws IOException {
+        char[] single = new char[1];
+        return read(single, 0, 1) == -1 ? -1 : single[0];
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int length) throws IOException {
+        int read = super.read(buffer, offset, length);
+        if (read > 0) replay.append(buffer, offset, read);
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        char[] skipped = new char[(int) Math.min(n, 8192)];
+        return Math.max(read(skipped, 0, skipped.length), 0);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+}
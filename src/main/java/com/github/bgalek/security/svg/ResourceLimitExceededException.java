@@ -0,0 +1,47 @@
+package com.github.bgalek.security.svg;
+
+/**
+ * Thrown as soon as an input crosses one of the limits configured on {@link SvgSecurityValidatorBuilder},
+ * the rest of the input is not processed.
+ */
+public class ResourceLimitExceededException extends RuntimeException {
+
+    public enum Limit {
+        INPUT_SIZE("input size"),
+        DEPTH("nesting depth"),
+        ELEMENTS("element count"),
+        ATTRIBUTES("attribute count"),
+        ATTRIBUTE_VALUE_LENGTH("attribute value length"),
+        DECOMPRESSED_SIZE("decompressed size"),
+        COMPRESSION_RATIO("compression ratio");
+
+        private final String description;
+
+        Limit(String description) {
+            this.description = description;
+        }
+    }
+
+    private final Limit limit;
+    private final long maximum;
+
+    ResourceLimitExceededException(Limit limit, long maximum) {
+        super("The " + limit.description + " exceeds the limit of " + maximum);
+        this.limit = limit;
+        this.maximum = maximum;
+    }
+
+    /**
+     * @return the limit that was crossed
+     */
+    public Limit getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return the configured maximum of the limit that was crossed
+     */
+    public long getMaximum() {
+        return maximum;
+    }
+}
@@ -0,0 +1,211 @@
+package com.github.bgalek.security.svg;
+
+import com.github.bgalek.security.svg.ResourceLimitExceededException.Limit;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Upper bounds on what a single validation may process, so that its worst-case cost is known up front.
+ * Markup limits are enforced by the tokenizer as tags stream by, before the parser or the sanitizer
+ * get to see the whole document.
+ */
+final class ResourceLimits {
+    static final ResourceLimits NONE = new ResourceLimits(Long.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE,
+            Integer.MAX_VALUE, Integer.MAX_VALUE, Long.MAX_VALUE, Integer.MAX_VALUE);
+    private static final int GZIP_MAGIC = 0x8b1f;
+
+    private final long maxInputSize;
+    private final int maxDepth;
+    private final int maxElements;
+    private final int maxAttributes;
+    private final int maxAttributeValueLength;
+    private final long maxDecompressedSize;
+    private final int maxCompressionRatio;
+
+    ResourceLimits(long maxInputSize, int maxDepth, int maxElements, int maxAttributes, int maxAttributeValueLength,
+                   long maxDecompressedSize, int maxCompressionRatio) {
+        this.maxInputSize = maxInputSize;
+        this.maxDepth = maxDepth;
+        this.maxElements = maxElements;
+        this.maxAttributes = maxAttributes;
+        this.maxAttributeValueLength = maxAttributeValueLength;
+        this.maxDecompressedSize = maxDecompressedSize;
+        this.maxCompressionRatio = maxCompressionRatio;
+    }
+
+    void checkInputSize(long size) {
+        if (size > maxInputSize) throw new ResourceLimitExceededException(Limit.INPUT_SIZE, maxInputSize);
+    }
+
+    /**
+     * @return the stream, failing once more than the maximum input size has been read from it
+     */
+    InputStream limit(InputStream input) {
+        if (maxInputSize == Long.MAX_VALUE) return input;
+        return new FilterInputStream(input) {
+            private long read;
+
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b != -1) count(1);
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int count = super.read(buffer, offset, length);
+                if (count > 0) count(count);
+                return count;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                long skipped = super.skip(n);
+                count(skipped);
+                return skipped;
+            }
+
+            private void count(long bytes) {
+                read += bytes;
+                checkInputSize(read);
+            }
+        };
+    }
+
+    /**
+     * @return true when the content starts with the gzip magic number, as {@code .svgz} files do
+     */
+    static boolean isCompressed(ByteBuffer input) {
+        int position = input.position();
+        return input.remaining() >= 2 && ((input.get(position) & 0xff) | (input.get(position + 1) & 0xff) << 8) == GZIP_MAGIC;
+    }
+
+    /**
+     * @return the stream, decompressed as it is read when it starts with the gzip magic number; reading fails
+     * as soon as more than the maximum decompressed size is inflated, or more than the maximum compression
+     * ratio times the compressed bytes read so far
+     */
+    InputStream decompress(InputStream input) throws IOException {
+        PushbackInputStream pushback = new PushbackInputStream(input, 2);
+        byte[] magic = new byte[2];
+        int length = 0;
+        for (int read = 0; length < magic.length && read != -1; length += Math.max(read, 0)) {
+            read = pushback.read(magic, length, magic.length - length);
+        }
+        pushback.unread(magic, 0, length);
+        if (length < magic.length || ((magic[0] & 0xff) | (magic[1] & 0xff) << 8) != GZIP_MAGIC) return pushback;
+        CountingInputStream compressed = new CountingInputStream(pushback);
+        return new CountingInputStream(new GZIPInputStream(compressed)) {
+            @Override
+            void counted(long decompressed) {
+                if (decompressed > maxDecompressedSize) {
+                    throw new ResourceLimitExceededException(Limit.DECOMPRESSED_SIZE, maxDecompressedSize);
+                }
+                if (maxCompressionRatio != Integer.MAX_VALUE && decompressed > maxCompressionRatio * compressed.count) {
+                    throw new ResourceLimitExceededException(Limit.COMPRESSION_RATIO, maxCompressionRatio);
+                }
+            }
+        };
+    }
+
+    boolean limitsMarkup() {
+        return maxDepth != Integer.MAX_VALUE || maxElements != Integer.MAX_VALUE || maxAttributes != Integer.MAX_VALUE
+                || maxAttributeValueLength != Integer.MAX_VALUE;
+    }
+
+    /**
+     * @return a tokenizer that enforces the markup limits before handing tokens to the handler
+     */
+    SvgTokenizer tokenizer(SvgTokenizer.Handler handler) {
+        if (!limitsMarkup()) return new SvgTokenizer(handler);
+        return new SvgTokenizer(new Enforcer(handler), maxAttributeValueLength);
+    }
+
+    /**
+     * Tokenizes the whole input for the markup limits alone.
+     */
+    void checkMarkup(CharSequence input, Deadline deadline) {
+        if (!limitsMarkup()) return;
+        SvgTokenizer tokenizer = tokenizer(null);
+        deadline.chunked(input, (start, end) -> tokenizer.feed(input, start, end));
+        tokenizer.finish();
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        long count;
+
+        private CountingInputStream(InputStream input) {
+            super(input);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) counted(++count);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) counted(count += read);
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            counted(count += skipped);
+            return skipped;
+        }
+
+        void counted(long count) {
+        }
+    }
+
+    private final class Enforcer implements SvgTokenizer.Handler {
+        private final SvgTokenizer.Handler delegate;
+        private int depth;
+        private int elements;
+        private int attributes;
+
+        private Enforcer(SvgTokenizer.Handler delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void startTag(CharSequence name) {
+            if (++elements > maxElements) throw new ResourceLimitExceededException(Limit.ELEMENTS, maxElements);
+            if (delegate != null) delegate.startTag(name);
+        }
+
+        @Override
+        public void attribute(CharSequence name, CharSequence value) {
+            if (++attributes > maxAttributes) throw new ResourceLimitExceededException(Limit.ATTRIBUTES, maxAttributes);
+            if (delegate != null) delegate.attribute(name, value);
+        }
+
+        @Override
+        public void startTagEnd(boolean selfClosing) {
+            if (!selfClosing && ++depth > maxDepth) throw new ResourceLimitExceededException(Limit.DEPTH, maxDepth);
+            if (delegate != null) delegate.startTagEnd(selfClosing);
+        }
+
+        @Override
+        public void endTag(CharSequence name) {
+            if (depth > 0) depth--;
+            if (delegate != null) delegate.endTag(name);
+        }
+
+        @Override
+        public void ambiguousMarkup() {
+            if (delegate != null) delegate.ambiguousMarkup();
+        }
+    }
+}
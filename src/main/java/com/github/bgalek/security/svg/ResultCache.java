@@ -0,0 +1,195 @@
+package com.github.bgalek.security.svg;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded, concurrent cache of validation results keyed by a digest of the content and of the
+ * validator configuration. SHA-256 is used rather than a faster non-cryptographic hash: a collision
+ * crafted against a weaker hash would let a malicious upload inherit the verdict of a clean one.
+ * <p>
+ * Entries are evicted in insertion order once there are more than {@code maxEntries}, and are
+ * ignored once older than the time to live. Lookups never lock.
+ * <p>
+ * A cache belongs to the validator that created it. The configuration fingerprint covers everything that
+ * changes a verdict all the same: allow-lists, syntax validation, single pass, fail-fast mode and the
+ * custom stages, which are told apart by class and cost.
+ */
+final class ResultCache {
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    private static final byte STRING_CONTENT = 0;
+    private static final byte BYTE_CONTENT = 1;
+    private static final int CHARS_PER_UPDATE = 1024;
+
+    private final int maxEntries;
+    private final long timeToLiveNanos;
+    private final byte[] configurationFingerprint;
+    private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final Queue<Entry> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queuedEntries = new AtomicInteger();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    ResultCache(int maxEntries, long timeToLiveNanos, String[] elements, String[] attributes, boolean syntaxValidation,
+                boolean singlePass, boolean failFast, List<ValidationStage> stages) {
+        this.maxEntries = maxEntries;
+        this.timeToLiveNanos = timeToLiveNanos;
+        this.configurationFingerprint = fingerprint(elements, attributes, syntaxValidation, singlePass, failFast, stages);
+    }
+
+    Key keyOf(String content) {
+        MessageDigest digest = newDigest();
+        digest.update(STRING_CONTENT);
+        byte[] buffer = new byte[CHARS_PER_UPDATE * 2];
+        for (int start = 0; start < content.length(); start += CHARS_PER_UPDATE) {
+            int end = Math.min(start + CHARS_PER_UPDATE, content.length());
+            for (int i = start; i < end; i++) {
+                char c = content.charAt(i);
+                buffer[(i - start) * 2] = (byte) (c >> 8);
+                buffer[(i - start) * 2 + 1] = (byte) c;
+            }
+            digest.update(buffer, 0, (end - start) * 2);
+        }
+        return new Key(digest.digest());
+    }
+
+    Key keyOf(ByteBuffer content) {
+        MessageDigest digest = newDigest();
+        digest.update(BYTE_CONTENT);
+        digest.update(content.duplicate());
+        return new Key(digest.digest());
+    }
+
+    /**
+     * @return the cached result, or null when there is none or it has expired
+     */
+    ValidationResult get(Key key) {
+        Entry entry = entries.get(key);
+        if (entry != null && System.nanoTime() - entry.createdAt > timeToLiveNanos) {
+            entries.remove(key, entry);
+            entry = null;
+        }
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.result;
+    }
+
+    /**
+     * @return the result as cached, cached results are shared between callers and cannot be modified
+     */
+    ValidationResult put(Key key, ValidationResult result) {
+        Entry entry = new Entry(key, shareable(result));
+        entries.put(key, entry);
+        insertionOrder.offer(entry);
+        if (queuedEntries.incrementAndGet() > maxEntries) evictOverflow();
+        return entry.result;
+    }
+
+    ResultCacheStatistics statistics() {
+        return new ResultCacheStatistics(hits.sum(), misses.sum(), evictions.sum(), entries.size());
+    }
+
+    private void evictOverflow() {
+        Entry oldest;
+        while (queuedEntries.get() > maxEntries && (oldest = insertionOrder.poll()) != null) {
+            queuedEntries.decrementAndGet();
+            // entries replaced or expired since are no longer in the map
+            if (entries.remove(oldest.key, oldest)) evictions.increment();
+        }
+    }
+
+    private static ValidationResult shareable(ValidationResult result) {
+        if (!result.hasViolations()) return result;
+        return new PositiveValidationResult(Collections.unmodifiableSet(new HashSet<>(result.getOffendingElements())));
+    }
+
+    private MessageDigest newDigest() {
+        MessageDigest digest = newDigestInstance();
+        digest.update(configurationFingerprint);
+        return digest;
+    }
+
+    private static byte[] fingerprint(String[] elements, String[] attributes, boolean syntaxValidation, boolean singlePass,
+                                      boolean failFast, List<ValidationStage> stages) {
+        MessageDigest digest = newDigestInstance();
+        for (String[] names : Arrays.asList(sorted(elements), sorted(attributes))) {
+            for (String name : names) {
+                digest.update(name.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            digest.update((byte) 1);
+        }
+        digest.update((byte) (syntaxValidation ? 1 : 0));
+        digest.update((byte) (singlePass ? 1 : 0));
+        // fail-fast results hold a single offending element
+        digest.update((byte) (failFast ? 1 : 0));
+        // the cheapest stage reporting violations decides, so stages count in order and with their cost
+        for (ValidationStage stage : stages) {
+            digest.update(stage.getClass().getName().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(ByteBuffer.allocate(4).putInt(0, stage.cost()));
+        }
+        return digest.digest();
+    }
+
+    private static String[] sorted(String[] names) {
+        String[] sorted = names.clone();
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private static MessageDigest newDigestInstance() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static final class Key {
+        private final byte[] digest;
+        private final int hashCode;
+
+        private Key(byte[] digest) {
+            this.digest = digest;
+            this.hashCode = Arrays.hashCode(digest);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && Arrays.equals(digest, ((Key) other).digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    private static final class Entry {
+        private final Key key;
+        private final ValidationResult result;
+        private final long createdAt = System.nanoTime();
+
+        private Entry(Key key, ValidationResult result) {
+            this.key = key;
+            this.result = result;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.github.bgalek.security.svg;
+
+/**
+ * Snapshot of the result cache counters, see {@link SvgSecurityValidatorBuilder#withResultCache}
+ */
+public final class ResultCacheStatistics {
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final int size;
+
+    ResultCacheStatistics(long hitCount, long missCount, long evictionCount, int size) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.size = size;
+    }
+
+    /**
+     * @return number of validations answered from the cache
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return number of validations that had to check the content
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return number of results dropped to keep the cache within its size
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * @return number of results currently cached, expired ones included until they are looked up or evicted
+     */
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return "ResultCacheStatistics{hitCount=" + hitCount + ", missCount=" + missCount
+                + ", evictionCount=" + evictionCount + ", size=" + size + '}';
+    }
+}
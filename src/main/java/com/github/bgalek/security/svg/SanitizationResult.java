@@ -0,0 +1,11 @@
+package com.github.bgalek.security.svg;
+
+/**
+ * Result of {@link SvgSecurityValidator#sanitize(String)}: the violations found and the content without them.
+ */
+public interface SanitizationResult extends ValidationResult {
+    /**
+     * @return svg content with every offending element and attribute removed
+     */
+    String getSanitizedContent();
+}
@@ -0,0 +1,28 @@
+package com.github.bgalek.security.svg;
+
+import java.util.Set;
+
+class SanitizedValidationResult implements SanitizationResult {
+    private final ValidationResult validationResult;
+    private final String sanitizedContent;
+
+    SanitizedValidationResult(ValidationResult validationResult, String sanitizedContent) {
+        this.validationResult = validationResult;
+        this.sanitizedContent = sanitizedContent;
+    }
+
+    @Override
+    public boolean hasViolations() {
+        return validationResult.hasViolations();
+    }
+
+    @Override
+    public Set<String> getOffendingElements() {
+        return validationResult.getOffendingElements();
+    }
+
+    @Override
+    public String getSanitizedContent() {
+        return sanitizedContent;
+    }
+}
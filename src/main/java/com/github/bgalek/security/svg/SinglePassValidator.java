@@ -0,0 +1,247 @@
+package com.github.bgalek.security.svg;
+
+import com.github.bgalek.security.svg.ValidationInstrumentation.Stage;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Validation engine that reads the input once. Every chunk read is handed to the dangerous content
+ * scanner, to the allow-list inspector and to the custom stages while it is still hot; with syntax validation
+ * enabled the chunks are the ones the XML parser pulls, so well-formedness is checked in the same pass.
+ */
+final class SinglePassValidator {
+    private static final int CHUNK_SIZE = 8192;
+
+    private final NameSet elements;
+    private final NameSet attributes;
+    private final XmlSyntaxValidator syntaxValidator;
+    private final ResourceLimits limits;
+    private final StagePipeline stages;
+    private final boolean failFast;
+    private final Probe probe;
+
+    SinglePassValidator(NameSet elements, NameSet attributes, XmlSyntaxValidator syntaxValidator, ResourceLimits limits,
+                        StagePipeline stages, boolean failFast, Probe probe) {
+        this.elements = elements;
+        this.attributes = attributes;
+        this.syntaxValidator = syntaxValidator;
+        this.limits = limits;
+        this.stages = stages;
+        this.failFast = failFast;
+        this.probe = probe;
+    }
+
+    /**
+     * Decides inputs containing markup the sanitizer may read differently than the inspection does.
+     */
+    interface Fallback {
+        /**
+         * @param approximation violations as seen by the inspection, not necessarily the sanitizer's
+         */
+        Set<String> getOffendingElements(Set<String> approximation) throws IOException;
+    }
+
+    /**
+     * Reads the input in chunks of {@value #CHUNK_SIZE} characters, it is never held in memory as a whole.
+     *
+     * In fail-fast mode reading stops at the first violation, the parser included, and only that
+     * violation is reported.
+     *
+     * @throws InvalidXMLSyntaxException when syntax validation is enabled and the input is not well-formed
+     *                                   before the verdict is known
+     * @throws ResourceLimitExceededException as soon as the input crosses a markup limit
+     */
+    Set<String> getOffendingElements(Reader input, Fallback fallback) throws IOException {
+        return getOffendingElements(input, newInspection(), fallback);
+    }
+
+    /**
+     * @param inspection a new inspection, other threads may watch it through {@link Inspection#isRejected()}
+     */
+    Set<String> getOffendingElements(Reader input, Inspection inspection, Fallback fallback) throws IOException {
+        Probe.Timing start = probe.startStage();
+        if (syntaxValidator != null) {
+            InspectingReader inspectingReader = new InspectingReader(input, inspection);
+            try {
+                syntaxValidator.validate(inspectingReader);
+            } catch (InvalidXMLSyntaxException e) {
+                // the parser reports read failures as syntax errors
+                if (inspectingReader.failure != null) throw inspectingReader.failure;
+                // the parser was cut off at the first violation
+                if (!failFast || !inspection.isDecided()) throw e;
+            }
+            inspectingReader.drain();
+        } else {
+            char[] buffer = new char[CHUNK_SIZE];
+            int read;
+            while (!inspection.isDecided() && (read = input.read(buffer)) != -1) {
+                inspection.feed(buffer, 0, read);
+            }
+        }
+        return finish(inspection, fallback, start);
+    }
+
+    /**
+     * Inspects input pushed to it chunk by chunk with {@link Inspection#feed}, see {@link #finish}.
+     * Syntax validation is not part of it.
+     */
+    Inspection newInspection() {
+        return new Inspection(elements, attributes, limits, stages, failFast);
+    }
+
+    /**
+     * Signals the end of the input to the inspection.
+     *
+     * @param start when the inspection started, see {@link Probe#startStage()}
+     */
+    Set<String> finish(Inspection inspection, Fallback fallback, Probe.Timing start) throws IOException {
+        Set<String> offendingElements = inspection.finish();
+        probe.stageCompleted(Stage.SINGLE_PASS, inspection.chars, start);
+        return inspection.isAmbiguous() ? fallback.getOffendingElements(offendingElements) : offendingElements;
+    }
+
+    /**
+     * Tokenizes the input once and checks it against the allow-lists only.
+     *
+     * @return true when the sanitizer is known to find nothing to report in the input
+     */
+    boolean isClean(CharSequence input, Deadline deadline) {
+        AllowListInspector allowList = new AllowListInspector(elements, attributes);
+        SvgTokenizer tokenizer = new SvgTokenizer(allowList);
+        deadline.chunked(input, (start, end) -> tokenizer.feed(input, start, end));
+        tokenizer.finish();
+        return !allowList.isAmbiguous() && allowList.getViolations().isEmpty();
+    }
+
+    static final class Inspection {
+        private final DangerousContentScanner scanner = new DangerousContentScanner();
+        private final AllowListInspector allowList;
+        private final StagePipeline.Run stages;
+        private final SvgTokenizer tokenizer;
+        // the scanner's early verdict is final only when no custom stage goes before it
+        private final boolean scannerDecides;
+        private final boolean failFast;
+        private boolean allowListConsulted;
+        private volatile boolean rejected;
+        private long chars;
+
+        private Inspection(NameSet elements, NameSet attributes, ResourceLimits limits, StagePipeline stages, boolean failFast) {
+            this.allowList = new AllowListInspector(elements, attributes);
+            this.stages = stages.newRun(allowList);
+            this.tokenizer = limits.tokenizer(stages.isEmpty() ? allowList : this.stages);
+            this.scannerDecides = !stages.precedesDangerousContent();
+            this.failFast = failFast;
+        }
+
+        void feed(char[] chars, int offset, int length) {
+            this.chars += length;
+            scanner.scan(chars, offset, length);
+            stages.characters(chars, offset, length);
+            tokenizer.feed(chars, offset, length);
+            if (!rejected && hasViolations()) rejected = true;
+        }
+
+        private boolean hasViolations() {
+            return scanner.offendingElement() != null || allowList.getFirstViolation() != null || stages.hasViolations();
+        }
+
+        /**
+         * @return true once the input is known to have violations, whatever follows
+         */
+        boolean isRejected() {
+            return rejected;
+        }
+
+        /**
+         * @return true once no further input can change the verdict
+         */
+        boolean isDecided() {
+            if (scannerDecides && scanner.isDecided()) return true;
+            return failFast && hasViolations();
+        }
+
+        private Set<String> finish() {
+            scanner.finish();
+            tokenizer.finish();
+            return stages.verdict(scanner.offendingElement(), () -> {
+                allowListConsulted = true;
+                String firstViolation = allowList.getFirstViolation();
+                if (failFast && firstViolation != null) return Collections.singleton(firstViolation);
+                return allowList.getViolations();
+            });
+        }
+
+        /**
+         * @return true when the verdict was left to the allow-list inspector and it could not judge the input exactly
+         */
+        private boolean isAmbiguous() {
+            if (failFast && allowList.getFirstViolation() != null) return false;
+            return allowListConsulted && allowList.isAmbiguous();
+        }
+    }
+
+    /**
+     * Lets the inspection observe exactly the characters the XML parser reads.
+     */
+    private static final class InspectingReader extends FilterReader {
+        private final Inspection inspection;
+        private IOException failure;
+
+        private InspectingReader(Reader input, Inspection inspection) {
+            super(input);
+            this.inspection = inspection;
+        }
+
+        @Override
+        public int read() throws IOException {
+            char[] single = new char[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0];
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            // in fail-fast mode the parser sees the end of input as soon as the verdict is known
+            if (inspection.failFast && inspection.isDecided()) return -1;
+            int read;
+            try {
+                read = super.read(buffer, offset, length);
+            } catch (IOException e) {
+                failure = e;
+                throw e;
+            }
+            if (read > 0) inspection.feed(buffer, offset, read);
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            char[] skipped = new char[(int) Math.min(n, CHUNK_SIZE)];
+            int read = read(skipped, 0, skipped.length);
+            return Math.max(read, 0);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+            // the parser closes its input when it is done, the remainder still has to be inspected
+        }
+
+        /**
+         * Inspects whatever the parser left unread after the end of the document.
+         */
+        private void drain() throws IOException {
+            char[] buffer = new char[CHUNK_SIZE];
+            while (read(buffer, 0, buffer.length) != -1) {
+                // inspected in read()
+            }
+        }
+    }
+}
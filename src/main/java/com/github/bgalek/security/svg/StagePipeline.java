@@ -0,0 +1,170 @@
+package com.github.bgalek.security.svg;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * The {@link ValidationStage}s of a validator, cheapest first, and how their verdicts combine with those of the
+ * built-in stages. The built-in stages keep their own engines, the dangerous content scanner and the allow-list
+ * inspector or the sanitizer; custom stages are fed by whichever pass over the input is already running.
+ */
+final class StagePipeline {
+    static final StagePipeline NONE = new StagePipeline(Collections.emptyList(), false);
+
+    private final ValidationStage[] stages;
+    private final int[] costs;
+    private final boolean failFast;
+
+    private StagePipeline(List<ValidationStage> stages, boolean failFast) {
+        List<ValidationStage> sorted = new ArrayList<>(stages);
+        // stable, stages of the same cost run in the order they were added
+        sorted.sort(Comparator.comparingInt(ValidationStage::cost));
+        this.stages = sorted.toArray(new ValidationStage[0]);
+        this.costs = new int[this.stages.length];
+        for (int i = 0; i < costs.length; i++) {
+            costs[i] = this.stages[i].cost();
+        }
+        this.failFast = failFast;
+    }
+
+    static StagePipeline of(List<ValidationStage> stages, boolean failFast) {
+        return stages.isEmpty() ? NONE : new StagePipeline(stages, failFast);
+    }
+
+    boolean isEmpty() {
+        return stages.length == 0;
+    }
+
+    /**
+     * @return true when some stage goes before the dangerous content scan, whose early verdict then is not final
+     */
+    boolean precedesDangerousContent() {
+        return stages.length > 0 && costs[0] < ValidationStage.DANGEROUS_CONTENT_COST;
+    }
+
+    /**
+     * @param next the built-in handler of the pass that feeds the stages, null when there is none
+     * @return the checks of one input
+     */
+    Run newRun(SvgTokenizer.Handler next) {
+        ValidationStage.Check[] checks = new ValidationStage.Check[stages.length];
+        for (int i = 0; i < checks.length; i++) {
+            checks[i] = stages[i].newCheck();
+        }
+        return new Run(checks, next);
+    }
+
+    /**
+     * Hands the chars and the tokens of one pass to the checks of one input, and tokens on to the built-in handler.
+     */
+    final class Run implements SvgTokenizer.Handler {
+        private final ValidationStage.Check[] checks;
+        private final SvgTokenizer.Handler next;
+
+        private Run(ValidationStage.Check[] checks, SvgTokenizer.Handler next) {
+            this.checks = checks;
+            this.next = next;
+        }
+
+        void characters(char[] chars, int offset, int length) {
+            if (checks.length > 0) characters(CharBuffer.wrap(chars, offset, length));
+        }
+
+        void characters(CharSequence chars, int start, int end) {
+            if (checks.length > 0) characters(CharBuffer.wrap(chars, start, end));
+        }
+
+        private void characters(CharBuffer chunk) {
+            for (ValidationStage.Check check : checks) {
+                // a check may read the chunk through methods that move its position
+                check.characters(chunk.duplicate());
+            }
+        }
+
+        @Override
+        public void startTag(CharSequence name) {
+            if (next != null) next.startTag(name);
+            for (ValidationStage.Check check : checks) {
+                check.startTag(name);
+            }
+        }
+
+        @Override
+        public void attribute(CharSequence name, CharSequence value) {
+            if (next != null) next.attribute(name, value);
+            for (ValidationStage.Check check : checks) {
+                check.attribute(name, value);
+            }
+        }
+
+        @Override
+        public void startTagEnd(boolean selfClosing) {
+            if (next != null) next.startTagEnd(selfClosing);
+        }
+
+        @Override
+        public void endTag(CharSequence name) {
+            if (next != null) next.endTag(name);
+            for (ValidationStage.Check check : checks) {
+                check.endTag(name);
+            }
+        }
+
+        @Override
+        public void ambiguousMarkup() {
+            if (next != null) next.ambiguousMarkup();
+        }
+
+        /**
+         * @return true once some check reports a violation
+         */
+        boolean hasViolations() {
+            for (ValidationStage.Check check : checks) {
+                if (!check.getViolations().isEmpty()) return true;
+            }
+            return false;
+        }
+
+        /**
+         * Combines the verdicts of the built-in stages and of the checks, cheapest first, once the input has been read.
+         *
+         * @param dangerousContent the offending element the dangerous content scan found, or null
+         * @param allowList        violations of the allow-list stage, only asked for when no cheaper stage reports any
+         */
+        Set<String> verdict(String dangerousContent, Supplier<Set<String>> allowList) {
+            Set<String> violations = violationsCostingLessThan(ValidationStage.DANGEROUS_CONTENT_COST);
+            if (!violations.isEmpty()) return violations;
+            if (dangerousContent != null) return Collections.singleton(dangerousContent);
+            violations = violationsCostingLessThan(ValidationStage.ALLOW_LIST_COST);
+            if (!violations.isEmpty()) return violations;
+            violations = allowList.get();
+            if (!violations.isEmpty()) return violations;
+            for (ValidationStage.Check check : checks) {
+                violations = violationsOf(check);
+                if (!violations.isEmpty()) return violations;
+            }
+            return Collections.emptySet();
+        }
+
+        private Set<String> violationsCostingLessThan(int cost) {
+            for (int i = 0; i < checks.length && costs[i] < cost; i++) {
+                Set<String> violations = violationsOf(checks[i]);
+                if (!violations.isEmpty()) return violations;
+            }
+            return Collections.emptySet();
+        }
+
+        private Set<String> violationsOf(ValidationStage.Check check) {
+            Set<String> violations = check.getViolations();
+            if (violations.isEmpty()) return violations;
+            // detached from the check, in fail-fast mode only one violation is reported
+            return failFast ? Collections.singleton(violations.iterator().next()) : new HashSet<>(violations);
+        }
+    }
+}
@@ -1,14 +1,40 @@
 package com.github.bgalek.security.svg;
 
+import com.github.bgalek.security.svg.ValidationInstrumentation.Stage;
+import org.owasp.html.Handler;
 import org.owasp.html.HtmlChangeListener;
 import org.owasp.html.HtmlPolicyBuilder;
+import org.owasp.html.HtmlSanitizer;
+import org.owasp.html.HtmlStreamEventReceiver;
+import org.owasp.html.HtmlStreamRenderer;
 import org.owasp.html.PolicyFactory;
 
-import javax.xml.parsers.DocumentBuilder;
-import java.io.ByteArrayInputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.*;
-import java.util.regex.Pattern;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 /**
  * SVG Safe is a very simple and lightweight library that helps
@@ -20,33 +46,103 @@ import java.util.regex.Pattern;
  */
 public class SvgSecurityValidator implements XssDetector {
 
-    private static final Pattern JAVASCRIPT_PROTOCOL_IN_CSS_URL =
-            Pattern.compile("url\\(\\s*['\"]?\\s*javascript", Pattern.CASE_INSENSITIVE);
-    private static final Pattern SCRIPT_TAG =
-            Pattern.compile("<\\s*/?\\s*script(\\s|/|>|$)", Pattern.CASE_INSENSITIVE);
-    // The sanitizer protocol-filters "href" but not "xlink:href" (which is on the allow-list),
-    // so a javascript: protocol can otherwise slip through on permitted elements such as <image>/<use>.
-    private static final Pattern JAVASCRIPT_PROTOCOL_IN_XLINK_HREF =
-            Pattern.compile("xlink:href\\s*=\\s*[\"']?\\s*javascript:", Pattern.CASE_INSENSITIVE);
+    private static final String JAVASCRIPT_URL = "javascript:";
 
-    private final String[] svgElements;
-    private final String[] svgAttributes;
-    private final DocumentBuilder xmlParser;
+    private final PolicyFactory policy;
+    private final PolicyFactory outputPolicy;
+    private final XmlSyntaxValidator syntaxValidator;
+    private final SinglePassValidator singlePassValidator;
+    private final boolean singlePass;
+    private final boolean cleanInputFastPath;
+    private final boolean failFast;
+    private final ResultCache resultCache;
+    private final ResourceLimits limits;
+    private final Duration timeBudget;
+    private final PrologPolicy prologPolicy;
+    private final StagePipeline stages;
+    private final Probe probe;
+    private final Executor asyncExecutor;
+    private final Semaphore pendingValidations;
+    private final int maxPendingValidations;
 
     /**
      * Use builder SvgSecurityValidator.builder()
      */
     @Deprecated
     public SvgSecurityValidator() {
-        this.svgElements = SvgElements.DEFAULT_SVG_ELEMENTS;
-        this.svgAttributes = SvgAttributes.DEFAULT_SVG_ATTRIBUTES;
-        this.xmlParser = null;
+        this(new SvgSecurityValidatorBuilder());
     }
 
-    SvgSecurityValidator(String[] elements, String[] attributes, DocumentBuilder xmlParser) {
-        this.svgElements = elements;
-        this.svgAttributes = attributes;
-        this.xmlParser = xmlParser;
+    SvgSecurityValidator(SvgSecurityValidatorBuilder builder) {
+        this(builder, true);
+    }
+
+    /**
+     * @param observed false for validators that neither report to the instrumentation nor cache results, see {@link WarmUp}
+     */
+    SvgSecurityValidator(SvgSecurityValidatorBuilder builder, boolean observed) {
+        this.policy = createPolicy(builder.elements, builder.attributes);
+        this.outputPolicy = createOutputPolicy(builder.elements, builder.attributes);
+        this.syntaxValidator = builder.syntaxValidator;
+        this.limits = builder.limits();
+        this.timeBudget = builder.timeBudget;
+        this.prologPolicy = builder.prologPolicy;
+        this.stages = StagePipeline.of(builder.stages, builder.failFast);
+        this.probe = observed ? Probe.of(builder.instrumentations) : Probe.NONE;
+        this.asyncExecutor = builder.asyncExecutor != null ? builder.asyncExecutor : ValidationExecutors.defaultExecutor();
+        this.maxPendingValidations = builder.maxPendingValidations;
+        this.pendingValidations = new Semaphore(maxPendingValidations);
+        this.singlePassValidator = new SinglePassValidator(builder.elementNames(), builder.attributeNames(), syntaxValidator, limits,
+                stages, builder.failFast, probe);
+        this.singlePass = builder.singlePass;
+        this.cleanInputFastPath = builder.cleanInputFastPath;
+        this.failFast = builder.failFast;
+        this.resultCache = !observed || builder.resultCacheTimeToLive == null ? null : new ResultCache(builder.resultCacheMaxEntries,
+                builder.resultCacheTimeToLive.toNanos(), builder.elements, builder.attributes, syntaxValidator != null,
+                builder.singlePass, builder.failFast, builder.stages);
+    }
+
+    /**
+     * Compiling the policy walks the whole allow-list, so it is done once per validator.
+     * {@link PolicyFactory} is immutable and safe to share between threads.
+     */
+    private static PolicyFactory createPolicy(String[] elements, String[] attributes) {
+        return new HtmlPolicyBuilder()
+                .allowElements(elements)
+                .allowAttributes(attributes).globally()
+                .allowUrlProtocols("https")
+                .toFactory();
+    }
+
+    /**
+     * The validation policy, except that no attribute value carrying a javascript: URL is kept. The sanitizer
+     * protocol-filters {@code href} but not {@code xlink:href} or animation values such as {@code to}; validation
+     * reports those through the signature scan, sanitized output must not contain them at all.
+     */
+    private static PolicyFactory createOutputPolicy(String[] elements, String[] attributes) {
+        return new HtmlPolicyBuilder()
+                .allowElements(elements)
+                .allowAttributes(attributes).matching(SvgSecurityValidator::withoutJavascriptUrl).globally()
+                .allowUrlProtocols("https")
+                .toFactory();
+    }
+
+    /**
+     * @return the value, or null when it contains javascript: once whitespace and control characters,
+     * which browsers ignore in URL schemes, are left out
+     */
+    private static String withoutJavascriptUrl(String elementName, String attributeName, String value) {
+        int matched = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = Character.toLowerCase(value.charAt(i));
+            if (c <= ' ') continue;
+            if (c == JAVASCRIPT_URL.charAt(matched)) {
+                if (++matched == JAVASCRIPT_URL.length()) return null;
+            } else {
+                matched = c == JAVASCRIPT_URL.charAt(0) ? 1 : 0;
+            }
+        }
+        return value;
     }
 
     public static SvgSecurityValidatorBuilder builder() {
@@ -62,41 +158,574 @@ public class SvgSecurityValidator implements XssDetector {
      */
     @Override
     public ValidationResult validate(String input) {
-        if (xmlParser != null) validateXMLSchema(input);
-        Set<String> offendingElements = getOffendingElements(input);
-        if (offendingElements.isEmpty()) return new NegativeValidationResult();
-        return new PositiveValidationResult(offendingElements);
+        Probe.Timing start = probe.start();
+        try {
+            return probe.validationCompleted(validateCached(input), input.length(), start);
+        } catch (RuntimeException e) {
+            probe.validationFailed(e, input.length(), start);
+            throw e;
+        }
+    }
+
+    private ValidationResult validateCached(String input) {
+        Deadline deadline = Deadline.after(timeBudget);
+        limits.checkInputSize(input.length());
+        prologPolicy.check(input);
+        if (resultCache == null) return validateUncached(input, deadline);
+        ResultCache.Key key = resultCache.keyOf(input);
+        ValidationResult cached = resultCache.get(key);
+        return cached != null ? cached : resultCache.put(key, validateUncached(input, deadline));
+    }
+
+    private ValidationResult validateUncached(String input, Deadline deadline) {
+        return toValidationResult(singlePass
+                ? getOffendingElementsInSinglePass(input, deadline)
+                : getOffendingElementsInStages(input, deadline));
     }
 
     @Override
     public ValidationResult validate(byte[] input) {
-        return validate(new String(input, StandardCharsets.UTF_8));
+        return validate(input, 0, input.length);
     }
 
-    private void validateXMLSchema(String input) {
+    /**
+     * Validates UTF-8 encoded svg content, see {@link #validate(String)}. It is decoded in small chunks, the
+     * prolog policy and the time budget are checked as it is. With {@link SvgSecurityValidatorBuilder#withSinglePassValidation()}
+     * the content is validated in place, the chunks go straight to the detectors and the syntax check instead
+     * of being copied into a {@link String} first. Gzip compressed content is decompressed on the fly, see
+     * {@link #validate(InputStream)}.
+     *
+     * @param input  svg file content to validate
+     * @param offset index of the first byte to validate
+     * @param length number of bytes to validate
+     * @return {@link ValidationResult}
+     */
+    @Override
+    public ValidationResult validate(byte[] input, int offset, int length) {
+        return validate(ByteBuffer.wrap(input, offset, length));
+    }
+
+    /**
+     * Validates the UTF-8 encoded svg content between the buffer's position and limit, see
+     * {@link #validate(byte[], int, int)}. Direct and memory-mapped buffers are read without
+     * copying them to the heap. The buffer's position is not changed.
+     *
+     * @param input svg file content to validate
+     * @return {@link ValidationResult}
+     */
+    @Override
+    public ValidationResult validate(ByteBuffer input) {
+        Probe.Timing start = probe.start();
+        int size = input.remaining();
         try {
-            assert xmlParser != null;
-            xmlParser.parse(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)));
-        } catch (Exception e) {
-            throw new InvalidXMLSyntaxException(e);
+            return probe.validationCompleted(validateCached(input), size, start);
+        } catch (RuntimeException e) {
+            probe.validationFailed(e, size, start);
+            throw e;
         }
     }
 
-    private Set<String> getOffendingElements(String xml) {
-        if (JAVASCRIPT_PROTOCOL_IN_CSS_URL.matcher(xml).find()) return Collections.singleton("style");
-        if (SCRIPT_TAG.matcher(xml).find()) return Collections.singleton("script");
-        if (JAVASCRIPT_PROTOCOL_IN_XLINK_HREF.matcher(xml).find()) return Collections.singleton("xlink:href");
-        PolicyFactory policy = new HtmlPolicyBuilder()
-                .allowElements(this.svgElements)
-                .allowAttributes(this.svgAttributes).globally()
-                .allowUrlProtocols("https")
-                .toFactory();
+    private ValidationResult validateCached(ByteBuffer input) {
+        Deadline deadline = Deadline.after(timeBudget);
+        limits.checkInputSize(input.remaining());
+        if (resultCache == null) return validateUncached(input, deadline);
+        ResultCache.Key key = resultCache.keyOf(input);
+        ValidationResult cached = resultCache.get(key);
+        return cached != null ? cached : resultCache.put(key, validateUncached(input, deadline));
+    }
+
+    private ValidationResult validateUncached(ByteBuffer input, Deadline deadline) {
+        try {
+            // compressed bytes are decompressed again for the sanitizer rather than replayed
+            if (ResourceLimits.isCompressed(input)) return validate(new ByteBufferInputStream(input), () -> new ByteBufferInputStream(input), deadline);
+            Reader reader = deadline.guard(prologPolicy.guard(new ByteBufferReader(input)));
+            if (!singlePass) return toValidationResult(getOffendingElementsInStages(readFully(reader, input.remaining()), deadline));
+            return toValidationResult(singlePassValidator.getOffendingElements(reader,
+                    approximation -> getOffendingElements(StandardCharsets.UTF_8.decode(input.duplicate()).toString(), deadline)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String readFully(Reader input, int capacity) throws IOException {
+        StringBuilder content = new StringBuilder(capacity);
+        char[] buffer = new char[8192];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            content.append(buffer, 0, read);
+        }
+        return content.toString();
+    }
+
+    /**
+     * Validates UTF-8 encoded svg content while reading it, with buffers of a fixed size, so memory
+     * use does not grow with the input. The stream is read to the end (or until the verdict is known)
+     * but not closed.
+     * <p>
+     * Markup the single-pass engine cannot judge exactly like the sanitizer is replayed to the
+     * sanitizer. To that end the characters read are kept aside as well, the first ones in memory and
+     * the rest of a large input in a temporary file that is deleted once the validation is done.
+     * <p>
+     * Gzip compressed content ({@code .svgz}) is recognised by its magic number and decompressed as it
+     * is read, within {@link SvgSecurityValidatorBuilder#withMaxDecompressedSize} and
+     * {@link SvgSecurityValidatorBuilder#withMaxCompressionRatio}; so it is for byte and file inputs.
+     *
+     * @param input svg file content to validate
+     * @return {@link ValidationResult}
+     * @throws IOException when reading the stream fails, or the compressed content is corrupt
+     */
+    @Override
+    public ValidationResult validate(InputStream input) throws IOException {
+        Probe.Timing start = probe.start();
+        InputStream counted = probe.count(input);
+        try {
+            return probe.validationCompleted(validateStream(counted), Probe.bytesRead(counted), start);
+        } catch (IOException | RuntimeException e) {
+            probe.validationFailed(e, Probe.bytesRead(counted), start);
+            throw e;
+        }
+    }
+
+    private ValidationResult validateStream(InputStream input) throws IOException {
+        return validateStream(input, Deadline.after(timeBudget));
+    }
+
+    private ValidationResult validateStream(InputStream input, Deadline deadline) throws IOException {
+        try (ReplayBuffer replay = new ReplayBuffer()) {
+            Reader reader = new ReplayReader(utf8Reader(limits.decompress(limits.limit(input))), replay);
+            return toValidationResult(singlePassValidator.getOffendingElements(deadline.guard(prologPolicy.guard(reader)),
+                    approximation -> getOffendingElements(replay.contents(), deadline)));
+        }
+    }
+
+    /**
+     * Validates an UTF-8 encoded svg file while reading it, see {@link #validate(InputStream)}.
+     * Files the single-pass engine cannot judge exactly like the sanitizer are read again
+     * and handed to the sanitizer, whatever their size.
+     *
+     * @param input svg file to validate
+     * @return {@link ValidationResult}
+     * @throws IOException when reading the file fails
+     */
+    @Override
+    public ValidationResult validate(Path input) throws IOException {
+        return validate(() -> Files.newInputStream(input), Files.size(input));
+    }
+
+    /**
+     * Validates and sanitizes in one pass: the sanitizer run that finds the violations also writes the content,
+     * with every offending element and attribute removed, to {@code output} as it goes, so large results are
+     * not built up in memory. The violations are those {@link #validate(String)} reports, all of them even in
+     * fail-fast mode, plus attributes whose values carry javascript: URLs in a form the signature scan does not
+     * recognise; no such value is written. Styles are not written either: the contents of {@code style}
+     * elements and {@code style} attributes are dropped, as they are not checked beyond the signature scan.
+     * <p>
+     * Syntax validation, resource limits and the prolog policy apply before anything is written. When the time budget runs out
+     * or writing fails, part of the output may already have been written. Results are not cached.
+     *
+     * @param input  svg file content to sanitize
+     * @param output where the sanitized content is written to
+     * @return {@link ValidationResult}
+     * @throws IOException when writing to the output fails
+     */
+    public ValidationResult sanitize(String input, Appendable output) throws IOException {
+        Probe.Timing start = probe.start();
+        try {
+            return probe.validationCompleted(sanitizeUncached(input, output), input.length(), start);
+        } catch (IOException | RuntimeException e) {
+            probe.validationFailed(e, input.length(), start);
+            throw e;
+        }
+    }
+
+    /**
+     * Writes the sanitized content UTF-8 encoded, see {@link #sanitize(String, Appendable)}. The stream is
+     * flushed but not closed.
+     *
+     * @param input  svg file content to sanitize
+     * @param output where the sanitized content is written to
+     * @return {@link ValidationResult}
+     * @throws IOException when writing to the output fails
+     */
+    public ValidationResult sanitize(String input, OutputStream output) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        ValidationResult result = sanitize(input, writer);
+        writer.flush();
+        return result;
+    }
+
+    /**
+     * Sanitizes to a {@link String}, see {@link #sanitize(String, Appendable)}.
+     *
+     * @param input svg file content to sanitize
+     * @return {@link SanitizationResult}
+     */
+    public SanitizationResult sanitize(String input) {
+        StringBuilder output = new StringBuilder();
+        try {
+            return new SanitizedValidationResult(sanitize(input, output), output.toString());
+        } catch (IOException e) {
+            // appending to a StringBuilder does not fail
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private ValidationResult sanitizeUncached(String input, Appendable output) throws IOException {
+        Deadline deadline = Deadline.after(timeBudget);
+        limits.checkInputSize(input.length());
+        prologPolicy.check(input);
+        checkStructure(input, deadline);
+        Probe.Timing scanStart = probe.startStage();
+        DangerousContentScanner scanner = new DangerousContentScanner();
+        StagePipeline.Run run = stages.newRun(null);
+        SvgTokenizer tokenizer = stages.isEmpty() ? null : new SvgTokenizer(run);
+        deadline.chunked(input, (start, end) -> {
+            scanner.scan(input, start, end);
+            if (tokenizer != null) feed(run, tokenizer, input, start, end);
+        });
+        scanner.finish();
+        if (tokenizer != null) tokenizer.finish();
+        probe.stageCompleted(Stage.DANGEROUS_CONTENT, input.length(), scanStart);
+        Probe.Timing sanitizerStart = probe.startStage();
+        Set<String> violations = new HashSet<>();
+        HtmlStreamRenderer renderer = HtmlStreamRenderer.create(output, e -> {
+            throw new UncheckedIOException(e);
+        }, Handler.DO_NOTHING);
+        try {
+            HtmlSanitizer.sanitize(input, deadline.guard(outputPolicy.apply(renderer, violationsCollector(), violations)));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        probe.stageCompleted(Stage.SANITIZER, input.length(), sanitizerStart);
+        // see getViolations
+        violations.remove("style");
+        return toValidationResult(run.verdict(scanner.offendingElement(), () -> violations));
+    }
+
+    /**
+     * Validates asynchronously, see {@link #validate(String)} and {@link SvgSecurityValidatorBuilder#withAsyncExecutor}.
+     *
+     * @param input svg file content to validate
+     * @return the {@link ValidationResult}, or a future failed with {@link RejectedExecutionException} when
+     * too many validations are pending, see {@link SvgSecurityValidatorBuilder#withMaxPendingValidations}
+     */
+    public CompletableFuture<ValidationResult> validateAsync(String input) {
+        return submit(() -> validate(input));
+    }
+
+    /**
+     * Validates asynchronously, see {@link #validate(byte[])} and {@link #validateAsync(String)}.
+     * The content must not be modified until the future completes.
+     */
+    public CompletableFuture<ValidationResult> validateAsync(byte[] input) {
+        return submit(() -> validate(input));
+    }
+
+    /**
+     * Validates asynchronously, see {@link #validate(ByteBuffer)} and {@link #validateAsync(String)}.
+     * The content must not be modified until the future completes.
+     */
+    public CompletableFuture<ValidationResult> validateAsync(ByteBuffer input) {
+        return submit(() -> validate(input));
+    }
+
+    /**
+     * Reads and validates the file asynchronously, see {@link #validate(Path)} and {@link #validateAsync(String)}.
+     */
+    public CompletableFuture<ValidationResult> validateAsync(Path input) {
+        return submit(() -> validate(input));
+    }
+
+    /**
+     * Runs the task on the async executor as one of the pending validations.
+     *
+     * @return the task's result, or a future failed with {@link RejectedExecutionException} when too many
+     * validations are pending
+     */
+    private <T> CompletableFuture<T> submit(AsyncTask<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        if (!pendingValidations.tryAcquire()) {
+            result.completeExceptionally(tooManyPendingValidations());
+            return result;
+        }
+        try {
+            asyncExecutor.execute(() -> {
+                T taskResult = null;
+                Throwable failure = null;
+                try {
+                    taskResult = task.run();
+                } catch (Throwable e) {
+                    failure = e;
+                } finally {
+                    // released first, so callbacks of the result may validate again
+                    pendingValidations.release();
+                }
+                if (failure == null) result.complete(taskResult);
+                else result.completeExceptionally(failure);
+            });
+        } catch (RejectedExecutionException e) {
+            pendingValidations.release();
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    private RejectedExecutionException tooManyPendingValidations() {
+        return new RejectedExecutionException("More than " + maxPendingValidations + " validations are pending");
+    }
+
+    interface AsyncTask<T> {
+        T run() throws IOException;
+    }
+
+    /**
+     * Starts validating UTF-8 encoded svg content that is pushed chunk by chunk as it arrives,
+     * see {@link IncrementalValidation}.
+     *
+     * @return a new validation, used once
+     * @throws RejectedExecutionException when syntax validation is enabled and too many validations are pending,
+     *                                    see {@link SvgSecurityValidatorBuilder#withMaxPendingValidations}
+     */
+    public IncrementalValidation newIncrementalValidation() {
+        return new IncrementalValidation(singlePassValidator, syntaxValidator != null,
+                content -> getOffendingElements(content, Deadline.NONE), limits, prologPolicy, probe, this::submit);
+    }
+
+    /**
+     * Validates many inputs in parallel on the common {@link ForkJoinPool}, see {@link #validateAll(Collection, Executor)}.
+     *
+     * @param inputs svg file contents to validate
+     * @return {@link ValidationResult} of each input, in input order
+     */
+    public List<ValidationResult> validateAll(Collection<String> inputs) {
+        return validateAll(inputs, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Validates many inputs in parallel, each input is a separate task on the given executor.
+     * All tasks share this validator's compiled policy and parser pool.
+     *
+     * @param inputs   svg file contents to validate
+     * @param executor runs the validation tasks
+     * @return {@link ValidationResult} of each input, in input order
+     * @throws InvalidXMLSyntaxException of the first input in order that is not well-formed, when syntax
+     *                                   validation is enabled
+     */
+    public List<ValidationResult> validateAll(Collection<String> inputs, Executor executor) {
+        List<CompletableFuture<ValidationResult>> results = new ArrayList<>(inputs.size());
+        for (String input : inputs) {
+            results.add(CompletableFuture.supplyAsync(() -> validate(input), executor));
+        }
+        List<ValidationResult> validationResults = new ArrayList<>(results.size());
+        for (CompletableFuture<ValidationResult> result : results) {
+            validationResults.add(join(result));
+        }
+        return validationResults;
+    }
+
+    /**
+     * Validates every {@code .svg} entry of a ZIP archive in parallel on the common {@link ForkJoinPool},
+     * see {@link #validateArchive(Path, Executor)}.
+     *
+     * @param archive ZIP archive to validate
+     * @return {@link ValidationResult} of each svg entry by entry name, in archive order
+     * @throws IOException when reading the archive fails
+     */
+    public Map<String, ValidationResult> validateArchive(Path archive) throws IOException {
+        return validateArchive(archive, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Validates every {@code .svg} entry of a ZIP archive in parallel. Entries are streamed from the
+     * archive by the tasks themselves, see {@link #validate(InputStream)}, so they are never all held
+     * in memory at once; entries the single-pass engine cannot judge exactly are read again for the sanitizer.
+     *
+     * @param archive  ZIP archive to validate
+     * @param executor runs the validation tasks
+     * @return {@link ValidationResult} of each svg entry by entry name, in archive order
+     * @throws IOException when reading the archive fails
+     * @throws InvalidXMLSyntaxException of the first entry in order that is not well-formed, when syntax
+     *                                   validation is enabled
+     */
+    public Map<String, ValidationResult> validateArchive(Path archive, Executor executor) throws IOException {
+        try (ZipFile zipFile = new ZipFile(archive.toFile(), StandardCharsets.UTF_8)) {
+            Map<String, CompletableFuture<ValidationResult>> results = new LinkedHashMap<>();
+            AtomicBoolean abandoned = new AtomicBoolean();
+            try {
+                Enumeration<? extends ZipEntry> entries = zipFile.entries();
+                while (entries.hasMoreElements()) {
+                    ZipEntry entry = entries.nextElement();
+                    if (entry.isDirectory() || !entry.getName().toLowerCase(Locale.ROOT).endsWith(".svg")) continue;
+                    results.put(entry.getName(), CompletableFuture.supplyAsync(() -> {
+                        if (abandoned.get()) return null;
+                        try {
+                            return validate(() -> zipFile.getInputStream(entry), entry.getSize());
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }, executor));
+                }
+                Map<String, ValidationResult> validationResults = new LinkedHashMap<>();
+                for (Map.Entry<String, CompletableFuture<ValidationResult>> result : results.entrySet()) {
+                    validationResults.put(result.getKey(), join(result.getValue()));
+                }
+                return validationResults;
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } finally {
+                // the archive is closed on return, so tasks must not outlive this call
+                abandoned.set(true);
+                results.values().forEach(result -> result.handle((validationResult, failure) -> null).join());
+            }
+        }
+    }
+
+    private static ValidationResult join(CompletableFuture<ValidationResult> result) {
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error) throw (Error) e.getCause();
+            throw e;
+        }
+    }
+
+    /**
+     * Streams content that can be opened again, so markup the single-pass engine cannot judge
+     * exactly is read a second time for the sanitizer instead of being buffered.
+     */
+    private ValidationResult validate(ContentSource source, long size) throws IOException {
+        Probe.Timing start = probe.start();
+        InputStream stream = null;
+        try {
+            // entries of unknown size (-1) are only limited while they are read
+            limits.checkInputSize(size);
+            stream = probe.count(source.open());
+            try (InputStream content = stream) {
+                ValidationResult result = validate(content, source, Deadline.after(timeBudget));
+                return probe.validationCompleted(result, Probe.bytesRead(content), start);
+            }
+        } catch (IOException | RuntimeException e) {
+            probe.validationFailed(e, stream == null ? 0 : Probe.bytesRead(stream), start);
+            throw e;
+        }
+    }
+
+    /**
+     * @param content the content of the source, opened already
+     */
+    private ValidationResult validate(InputStream content, ContentSource source, Deadline deadline) throws IOException {
+        return toValidationResult(singlePassValidator.getOffendingElements(
+                deadline.guard(prologPolicy.guard(utf8Reader(limits.decompress(limits.limit(content))))),
+                approximation -> getOffendingElements(readFully(source), deadline)));
+    }
+
+    private interface ContentSource {
+        InputStream open() throws IOException;
+    }
+
+    private String readFully(ContentSource source) throws IOException {
+        try (InputStream stream = limits.decompress(source.open())) {
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                content.write(buffer, 0, read);
+            }
+            return new String(content.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * @return counters of the result cache, empty unless the validator was built with one
+     */
+    public Optional<ResultCacheStatistics> getResultCacheStatistics() {
+        return Optional.ofNullable(resultCache).map(ResultCache::statistics);
+    }
+
+    private static Reader utf8Reader(InputStream input) {
+        return new InputStreamReader(input, StandardCharsets.UTF_8);
+    }
+
+    private static ValidationResult toValidationResult(Set<String> offendingElements) {
+        if (offendingElements.isEmpty()) return new NegativeValidationResult();
+        return new PositiveValidationResult(offendingElements);
+    }
+
+    private Set<String> getOffendingElementsInStages(String input, Deadline deadline) {
+        checkStructure(input, deadline);
+        return getOffendingElements(input, deadline);
+    }
+
+    private void checkStructure(String input, Deadline deadline) {
+        if (limits.limitsMarkup()) {
+            // one cheap tokenizer pass bounds the cost of the stages that follow
+            Probe.Timing start = probe.startStage();
+            limits.checkMarkup(input, deadline);
+            probe.stageCompleted(Stage.MARKUP_LIMITS, input.length(), start);
+        }
+        if (syntaxValidator != null) {
+            Probe.Timing start = probe.startStage();
+            syntaxValidator.validate(deadline.guard(new StringReader(input)));
+            probe.stageCompleted(Stage.SYNTAX, input.length(), start);
+        }
+    }
+
+    private Set<String> getOffendingElementsInSinglePass(String input, Deadline deadline) {
+        try {
+            // markup the sanitizer may read differently is left to the sanitizer, syntax was already checked
+            return singlePassValidator.getOffendingElements(deadline.guard(new StringReader(input)),
+                    approximation -> getOffendingElements(input, deadline));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Set<String> getOffendingElements(String xml, Deadline deadline) {
+        // one pass for the script tag and javascript: URL signatures, see DangerousContentScanner,
+        // and for the custom stages, which the sanitizer is not run for when they decide first
+        Probe.Timing scanStart = probe.startStage();
+        DangerousContentScanner scanner = new DangerousContentScanner();
+        StagePipeline.Run run = stages.newRun(null);
+        SvgTokenizer tokenizer = stages.isEmpty() ? null : new SvgTokenizer(run);
+        deadline.chunked(xml, (start, end) -> {
+            if (failFast && (scanner.offendingElement() != null || run.hasViolations())) return;
+            scanner.scan(xml, start, end);
+            if (tokenizer != null) feed(run, tokenizer, xml, start, end);
+        });
+        scanner.finish();
+        if (tokenizer != null) tokenizer.finish();
+        probe.stageCompleted(Stage.DANGEROUS_CONTENT, xml.length(), scanStart);
+        return run.verdict(scanner.offendingElement(), () -> getAllowListViolations(xml, deadline));
+    }
+
+    private static void feed(StagePipeline.Run run, SvgTokenizer tokenizer, String input, int start, int end) {
+        run.characters(input, start, end);
+        tokenizer.feed(input, start, end);
+    }
+
+    private Set<String> getAllowListViolations(String xml, Deadline deadline) {
+        if (cleanInputFastPath) {
+            // sanitizing builds output that is thrown away, most inputs can be shown clean without it
+            Probe.Timing start = probe.startStage();
+            boolean clean = singlePassValidator.isClean(xml, deadline);
+            probe.stageCompleted(Stage.CLEAN_INPUT_CHECK, xml.length(), start);
+            if (clean) return Collections.emptySet();
+        }
+        Probe.Timing sanitizerStart = probe.startStage();
+        Set<String> violations = failFast ? getFirstViolation(xml, deadline) : getViolations(xml, deadline);
+        probe.stageCompleted(Stage.SANITIZER, xml.length(), sanitizerStart);
+        return violations;
+    }
+
+    private Set<String> getViolations(String xml, Deadline deadline) {
         Set<String> violations = new HashSet<>();
-        policy.sanitize(xml, violationsCollector(), violations);
+        // only the reported changes matter, the sanitized output is not rendered at all
+        HtmlSanitizer.sanitize(xml, deadline.guard(policy.apply(new DiscardingReceiver(), violationsCollector(), violations)));
         // The "style" attribute is part of the default allow-list and is intentionally permitted.
         // Newer versions of owasp-java-html-sanitizer strip it whenever CSS styling is not explicitly
         // enabled, which would surface it as a false-positive violation. CSS-based JavaScript injection
-        // (e.g. url(javascript:...)) is detected separately by JAVASCRIPT_PROTOCOL_IN_CSS_URL above,
+        // (e.g. url(javascript:...)) is detected separately by the DangerousContentScanner above,
         // so removing it here preserves the original detection contract.
         violations.remove("style");
         return violations;
@@ -106,6 +735,70 @@ public class SvgSecurityValidator implements XssDetector {
         return new ListHtmlChangeListener();
     }
 
+    /**
+     * Sanitizes only up to the first change the sanitizer reports, "style" excepted as above.
+     */
+    private Set<String> getFirstViolation(String xml, Deadline deadline) {
+        try {
+            HtmlSanitizer.sanitize(xml, deadline.guard(policy.apply(new DiscardingReceiver(), new FirstViolationListener(), null)));
+            return Collections.emptySet();
+        } catch (FirstViolation e) {
+            return Collections.singleton(e.violation);
+        }
+    }
+
+    private static class DiscardingReceiver implements HtmlStreamEventReceiver {
+        @Override
+        public void openDocument() {
+        }
+
+        @Override
+        public void closeDocument() {
+        }
+
+        @Override
+        public void openTag(String elementName, List<String> attributes) {
+        }
+
+        @Override
+        public void closeTag(String elementName) {
+        }
+
+        @Override
+        public void text(String text) {
+        }
+    }
+
+    private static class FirstViolationListener implements HtmlChangeListener<Void> {
+        @Override
+        public void discardedTag(Void context, String elementName) {
+            report(elementName);
+        }
+
+        @Override
+        public void discardedAttributes(Void context, String tagName, String... attributeNames) {
+            for (String attributeName : attributeNames) {
+                report(attributeName);
+            }
+        }
+
+        private static void report(String name) {
+            if (!"style".equals(name)) throw new FirstViolation(name);
+        }
+    }
+
+    /**
+     * Unwinds the sanitizer at the first violation, carries no stack trace.
+     */
+    private static class FirstViolation extends RuntimeException {
+        private final String violation;
+
+        private FirstViolation(String violation) {
+            super(violation, null, false, false);
+            this.violation = violation;
+        }
+    }
+
     private static class ListHtmlChangeListener implements HtmlChangeListener<Set<String>> {
         @Override
         public void discardedTag(Set<String> context, String elementName) {
@@ -1,20 +1,43 @@
 package com.github.bgalek.security.svg;
 
-import javax.xml.XMLConstants;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executor;
 import java.util.stream.Stream;
 
 import static com.github.bgalek.security.svg.SvgAttributes.DEFAULT_SVG_ATTRIBUTES;
 import static com.github.bgalek.security.svg.SvgElements.DEFAULT_SVG_ELEMENTS;
 
 public class SvgSecurityValidatorBuilder {
-    private String[] elements = DEFAULT_SVG_ELEMENTS;
-    private String[] attributes = DEFAULT_SVG_ATTRIBUTES;
-    private DocumentBuilder xmlParser;
+    static final int DEFAULT_MAX_PENDING_VALIDATIONS = 1024;
+    // compiled once, shared by every validator with the default allow-lists
+    private static final NameSet DEFAULT_ELEMENT_NAMES = NameSet.elements(DEFAULT_SVG_ELEMENTS);
+    private static final NameSet DEFAULT_ATTRIBUTE_NAMES = NameSet.attributes(DEFAULT_SVG_ATTRIBUTES);
+
+    String[] elements = DEFAULT_SVG_ELEMENTS;
+    String[] attributes = DEFAULT_SVG_ATTRIBUTES;
+    XmlSyntaxValidator syntaxValidator;
+    boolean singlePass;
+    boolean cleanInputFastPath;
+    boolean failFast;
+    PrologPolicy prologPolicy = PrologPolicy.allowDoctype();
+    final List<ValidationStage> stages = new ArrayList<>();
+    int resultCacheMaxEntries;
+    Duration resultCacheTimeToLive;
+    Duration timeBudget;
+    final List<ValidationInstrumentation> instrumentations = new ArrayList<>();
+    Executor asyncExecutor;
+    int maxPendingValidations = DEFAULT_MAX_PENDING_VALIDATIONS;
+    private long maxInputSize = Long.MAX_VALUE;
+    private int maxDepth = Integer.MAX_VALUE;
+    private int maxElements = Integer.MAX_VALUE;
+    private int maxAttributes = Integer.MAX_VALUE;
+    private int maxAttributeValueLength = Integer.MAX_VALUE;
+    private long maxDecompressedSize = Long.MAX_VALUE;
+    private int maxCompressionRatio = Integer.MAX_VALUE;
 
     SvgSecurityValidatorBuilder() {
     }
@@ -29,27 +52,232 @@ public class SvgSecurityValidatorBuilder {
         return this;
     }
 
+    /**
+     * Enables strict XML syntax validation. The resulting validator is safe to use from many threads
+     * at once, each call parses with its own pooled parser.
+     */
     public SvgSecurityValidatorBuilder withSyntaxValidation() {
-        DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
-        try {
-            documentBuilderFactory.setNamespaceAware(true);
-            // Harden against XXE and entity-expansion (billion laughs) attacks. A DOCTYPE declaration
-            // is still allowed because many legitimate SVGs ship one, but external entities and DTDs
-            // are never resolved.
-            documentBuilderFactory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
-            documentBuilderFactory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
-            documentBuilderFactory.setFeature("http://xml.org/sax/features/external-general-entities", false);
-            documentBuilderFactory.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
-            documentBuilderFactory.setXIncludeAware(false);
-            documentBuilderFactory.setExpandEntityReferences(false);
-            this.xmlParser = documentBuilderFactory.newDocumentBuilder();
-        } catch (ParserConfigurationException e) {
-            throw new RuntimeException(e);
+        this.syntaxValidator = new XmlSyntaxValidator();
+        return this;
+    }
+
+    /**
+     * Restricts what the XML prolog may declare, see {@link PrologPolicy}. Inputs declaring more are rejected
+     * with {@link ForbiddenPrologException} by a scan of the prolog alone, before any other check runs.
+     */
+    public SvgSecurityValidatorBuilder withPrologPolicy(PrologPolicy prologPolicy) {
+        this.prologPolicy = Objects.requireNonNull(prologPolicy);
+        return this;
+    }
+
+    /**
+     * Adds a check of your own to every validation, see {@link ValidationStage}. It is fed by the pass over the
+     * input the built-in checks already make and consulted in order of its cost; may be called more than once.
+     */
+    public SvgSecurityValidatorBuilder withStage(ValidationStage stage) {
+        this.stages.add(Objects.requireNonNull(stage));
+        return this;
+    }
+
+    /**
+     * Validates each input in a single streaming pass: the syntax check (when enabled), the dangerous
+     * content checks and the allow-list checks all run on the same chunk of input. Results are the same
+     * as with the default engine, which is still used for markup the single pass cannot judge exactly.
+     */
+    public SvgSecurityValidatorBuilder withSinglePassValidation() {
+        this.singlePass = true;
+        return this;
+    }
+
+    /**
+     * Screens each input with a lightweight tokenizer before running the sanitizer. Inputs that only use
+     * allowed elements and attributes are reported clean right away, anything else, or anything the
+     * tokenizer is unsure about, still goes through the sanitizer, so results do not change.
+     */
+    public SvgSecurityValidatorBuilder withCleanInputFastPath() {
+        this.cleanInputFastPath = true;
+        return this;
+    }
+
+    /**
+     * Stops each validation at the first violation found and reports only that one, so hostile inputs are
+     * rejected in time proportional to how far into them the first violation is rather than to their size.
+     * Whether an input is rejected does not change, but which single offending element is reported may differ
+     * from the ones reported without fail-fast. The syntax check still reads the whole input unless single-pass
+     * validation is enabled as well, see {@link #withSinglePassValidation()}.
+     */
+    public SvgSecurityValidatorBuilder withFailFast() {
+        this.failFast = true;
+        return this;
+    }
+
+    /**
+     * Remembers the results of the most recent validations, so content that is uploaded again is not checked
+     * again. Results are keyed by a SHA-256 digest of the content and of the configuration. Applies to
+     * {@code String}, {@code byte[]} and {@code ByteBuffer} inputs, streams are always checked.
+     * Cached results are shared between callers, their offending elements cannot be modified.
+     *
+     * @param maxEntries number of results to keep, the oldest are dropped first
+     * @param timeToLive how long a result may be served from the cache
+     */
+    public SvgSecurityValidatorBuilder withResultCache(int maxEntries, Duration timeToLive) {
+        if (timeToLive.isNegative() || timeToLive.isZero()) {
+            throw new IllegalArgumentException("timeToLive must be positive: " + timeToLive);
         }
+        this.resultCacheMaxEntries = (int) requirePositive(maxEntries, "maxEntries");
+        this.resultCacheTimeToLive = timeToLive;
+        return this;
+    }
+
+    /**
+     * Rejects larger inputs with {@link ResourceLimitExceededException}. Byte and stream inputs are
+     * measured in bytes, streams fail as soon as the limit is read past; {@code String} inputs are
+     * measured in chars.
+     */
+    public SvgSecurityValidatorBuilder withMaxInputSize(long maxInputSize) {
+        this.maxInputSize = requirePositive(maxInputSize, "maxInputSize");
+        return this;
+    }
+
+    /**
+     * Rejects inputs with elements nested deeper than this with {@link ResourceLimitExceededException}.
+     */
+    public SvgSecurityValidatorBuilder withMaxDepth(int maxDepth) {
+        this.maxDepth = (int) requirePositive(maxDepth, "maxDepth");
+        return this;
+    }
+
+    /**
+     * Rejects inputs with more elements in total than this with {@link ResourceLimitExceededException}.
+     */
+    public SvgSecurityValidatorBuilder withMaxElements(int maxElements) {
+        this.maxElements = (int) requirePositive(maxElements, "maxElements");
+        return this;
+    }
+
+    /**
+     * Rejects inputs with more attributes in total than this with {@link ResourceLimitExceededException}.
+     */
+    public SvgSecurityValidatorBuilder withMaxAttributes(int maxAttributes) {
+        this.maxAttributes = (int) requirePositive(maxAttributes, "maxAttributes");
+        return this;
+    }
+
+    /**
+     * Rejects inputs with a longer attribute value than this (in chars) with {@link ResourceLimitExceededException}.
+     */
+    public SvgSecurityValidatorBuilder withMaxAttributeValueLength(int maxAttributeValueLength) {
+        this.maxAttributeValueLength = (int) requirePositive(maxAttributeValueLength, "maxAttributeValueLength");
+        return this;
+    }
+
+    /**
+     * Rejects gzip compressed inputs ({@code .svgz}) that inflate to more bytes than this with
+     * {@link ResourceLimitExceededException}, as soon as that many have been inflated. Compressed byte, file
+     * and stream inputs are recognised by the gzip magic number and decompressed while they are validated;
+     * {@link #withMaxInputSize} applies to the compressed bytes.
+     */
+    public SvgSecurityValidatorBuilder withMaxDecompressedSize(long maxDecompressedSize) {
+        this.maxDecompressedSize = requirePositive(maxDecompressedSize, "maxDecompressedSize");
+        return this;
+    }
+
+    /**
+     * Rejects gzip compressed inputs that inflate to more than this many times the compressed bytes read so far
+     * with {@link ResourceLimitExceededException}, so decompression bombs are stopped after little work whatever
+     * their size. Markup compresses around ten to one, rarely beyond a hundred to one.
+     */
+    public SvgSecurityValidatorBuilder withMaxCompressionRatio(int maxCompressionRatio) {
+        this.maxCompressionRatio = (int) requirePositive(maxCompressionRatio, "maxCompressionRatio");
+        return this;
+    }
+
+    /**
+     * Bounds the time a single validation may take. Every stage (syntax check, dangerous content scan,
+     * allow-list checks and the sanitizer) checks the deadline as it goes and the validation stops with
+     * {@link ValidationTimeoutException} once it has passed; it runs on the caller's thread, so nothing
+     * is left running afterwards.
+     */
+    public SvgSecurityValidatorBuilder withTimeBudget(Duration timeBudget) {
+        if (timeBudget.isNegative() || timeBudget.isZero()) {
+            throw new IllegalArgumentException("timeBudget must be positive: " + timeBudget);
+        }
+        this.timeBudget = timeBudget;
+        return this;
+    }
+
+    /**
+     * Reports the time spent in each stage, the size of each input and each verdict or failure to the
+     * instrumentation, see {@link ValidationStatistics} for a ready implementation. Without instrumentation
+     * nothing is measured. Calling it again adds another instrumentation, each is reported to in turn.
+     */
+    public SvgSecurityValidatorBuilder withInstrumentation(ValidationInstrumentation instrumentation) {
+        this.instrumentations.add(Objects.requireNonNull(instrumentation));
+        return this;
+    }
+
+    /**
+     * Runs the {@code validateAsync} validations on the executor instead of the default one: the common
+     * {@link java.util.concurrent.ForkJoinPool}, or a virtual thread per validation on Java 21 and later.
+     */
+    public SvgSecurityValidatorBuilder withAsyncExecutor(Executor asyncExecutor) {
+        this.asyncExecutor = Objects.requireNonNull(asyncExecutor);
+        return this;
+    }
+
+    /**
+     * Bounds how many {@code validateAsync} validations, and incremental validations parsing on the async executor,
+     * may be queued or running at once, further ones are rejected right away with a
+     * {@link java.util.concurrent.RejectedExecutionException} until some finish.
+     * Defaults to {@value #DEFAULT_MAX_PENDING_VALIDATIONS}.
+     */
+    public SvgSecurityValidatorBuilder withMaxPendingValidations(int maxPendingValidations) {
+        this.maxPendingValidations = (int) requirePositive(maxPendingValidations, "maxPendingValidations");
         return this;
     }
 
     public SvgSecurityValidator build() {
-        return new SvgSecurityValidator(elements, attributes, xmlParser);
+        return new SvgSecurityValidator(this);
+    }
+
+    /**
+     * Builds the validator and does the one-time work of its first validations ahead of time, see
+     * {@link #buildWarmedUp(int)}, with 50 rounds.
+     */
+    public SvgSecurityValidator buildWarmedUp() {
+        return buildWarmedUp(WarmUp.DEFAULT_ROUNDS);
+    }
+
+    /**
+     * Builds the validator and does the one-time work of its first validations ahead of time: classes of the
+     * sanitizer and of the XML parser are loaded and initialized, the parser pool is filled, and the hot paths
+     * are run often enough for the JIT compiler to pick them up, so the first real verdict comes quickly.
+     * Meant for short-lived processes that validate soon after they start. The warm-up validations are not
+     * reported to the instrumentation and not kept in the result cache.
+     *
+     * @param rounds how many times the built-in samples are validated through every input type
+     */
+    public SvgSecurityValidator buildWarmedUp(int rounds) {
+        requirePositive(rounds, "rounds");
+        WarmUp.run(new SvgSecurityValidator(this, false), rounds);
+        return build();
+    }
+
+    NameSet elementNames() {
+        return elements == DEFAULT_SVG_ELEMENTS ? DEFAULT_ELEMENT_NAMES : NameSet.elements(elements);
+    }
+
+    NameSet attributeNames() {
+        return attributes == DEFAULT_SVG_ATTRIBUTES ? DEFAULT_ATTRIBUTE_NAMES : NameSet.attributes(attributes);
+    }
+
+    ResourceLimits limits() {
+        return new ResourceLimits(maxInputSize, maxDepth, maxElements, maxAttributes, maxAttributeValueLength,
+                maxDecompressedSize, maxCompressionRatio);
+    }
+
+    private static long requirePositive(long value, String name) {
+        if (value < 1) throw new IllegalArgumentException(name + " must be positive: " + value);
+        return value;
     }
-}
\ No newline at end of file
+}
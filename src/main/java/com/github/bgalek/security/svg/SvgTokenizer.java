@@ -0,0 +1,385 @@
+package com.github.bgalek.security.svg;
+
+/**
+ * Push-style markup tokenizer that splits input into tags and attributes the way an HTML lexer does,
+ * which is how the OWASP sanitizer reads SVG documents. It is deliberately lenient: it never fails,
+ * and any construct an HTML lexer might read differently is reported through
+ * {@link Handler#ambiguousMarkup()} so callers can fall back to the sanitizer itself.
+ * <p>
+ * Names and values are handed out as reused buffers that are only valid during the callback.
+ */
+final class SvgTokenizer {
+
+    interface Handler {
+        void startTag(CharSequence name);
+
+        /**
+         * @param value attribute value, null for attributes without one
+         */
+        void attribute(CharSequence name, CharSequence value);
+
+        void startTagEnd(boolean selfClosing);
+
+        void endTag(CharSequence name);
+
+        void ambiguousMarkup();
+    }
+
+    // elements whose content an HTML lexer reads as text up to the matching end tag, matched like the
+    // sanitizer matches tag names so the SVG textArea is not one of them
+    private static final NameSet RAW_TEXT_ELEMENTS = NameSet.elements(
+            "iframe", "noembed", "noframes", "noscript", "plaintext", "script", "style", "textarea", "title", "xmp");
+
+    private static final int TEXT = 0;
+    private static final int TAG_OPEN = 1;
+    private static final int END_TAG_OPEN = 2;
+    private static final int TAG_NAME = 3;
+    private static final int END_TAG_NAME = 4;
+    private static final int AFTER_END_TAG_NAME = 5;
+    private static final int BEFORE_ATTRIBUTE_NAME = 6;
+    private static final int ATTRIBUTE_NAME = 7;
+    private static final int AFTER_ATTRIBUTE_NAME = 8;
+    private static final int BEFORE_ATTRIBUTE_VALUE = 9;
+    private static final int ATTRIBUTE_VALUE_DOUBLE_QUOTED = 10;
+    private static final int ATTRIBUTE_VALUE_SINGLE_QUOTED = 11;
+    private static final int ATTRIBUTE_VALUE_UNQUOTED = 12;
+    private static final int AFTER_ATTRIBUTE_VALUE = 13;
+    private static final int SELF_CLOSING_START_TAG = 14;
+    private static final int MARKUP_DECLARATION = 15;
+    private static final int COMMENT_START = 16;
+    private static final int COMMENT = 17;
+    private static final int DIRECTIVE = 18;
+    private static final int RAW_TEXT = 19;
+    private static final int RAW_TEXT_LESS_THAN = 20;
+    private static final int RAW_TEXT_END_TAG_NAME = 21;
+
+    private final Handler handler;
+    private final int maxAttributeValueLength;
+    private final StringBuilder name = new StringBuilder();
+    private final StringBuilder attributeName = new StringBuilder();
+    private final StringBuilder attributeValue = new StringBuilder();
+    private int state = TEXT;
+    private int commentDashes;
+    private char directiveQuote;
+    private String rawTextElement;
+    private int rawTextMatched;
+    private boolean afterUnquotedValue;
+
+    SvgTokenizer(Handler handler) {
+        this(handler, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param maxAttributeValueLength longer values fail with {@link ResourceLimitExceededException}
+     *                                before they are buffered in full
+     */
+    SvgTokenizer(Handler handler, int maxAttributeValueLength) {
+        this.handler = handler;
+        this.maxAttributeValueLength = maxAttributeValueLength;
+    }
+
+    void feed(char[] chars, int offset, int length) {
+        for (int i = offset, end = offset + length; i < end; i++) {
+            consume(chars[i]);
+        }
+    }
+
+    void feed(CharSequence chars, int start, int end) {
+        for (int i = start; i < end; i++) {
+            consume(chars.charAt(i));
+        }
+    }
+
+    void finish() {
+        if (state != TEXT && state != RAW_TEXT) handler.ambiguousMarkup();
+        state = TEXT;
+    }
+
+    private void consume(char c) {
+        switch (state) {
+            case TEXT:
+                if (c == '<') state = TAG_OPEN;
+                break;
+            case TAG_OPEN:
+                if (isAsciiLetter(c)) {
+                    name.setLength(0);
+                    name.append(c);
+                    afterUnquotedValue = false;
+                    state = TAG_NAME;
+                } else if (c == '/') {
+                    state = END_TAG_OPEN;
+                } else if (c == '!') {
+                    state = MARKUP_DECLARATION;
+                } else if (c == '?') {
+                    startDirective();
+                } else {
+                    // a lone "<" is text
+                    state = TEXT;
+                    consume(c);
+                }
+                break;
+            case END_TAG_OPEN:
+                if (isAsciiLetter(c)) {
+                    name.setLength(0);
+                    name.append(c);
+                    state = END_TAG_NAME;
+                } else {
+                    handler.ambiguousMarkup();
+                    startDirective();
+                    consume(c);
+                }
+                break;
+            case TAG_NAME:
+                if (isWhitespace(c)) {
+                    handler.startTag(name);
+                    state = BEFORE_ATTRIBUTE_NAME;
+                } else if (c == '/') {
+                    handler.startTag(name);
+                    state = SELF_CLOSING_START_TAG;
+                } else if (c == '>') {
+                    handler.startTag(name);
+                    endStartTag(false);
+                } else {
+                    name.append(c);
+                }
+                break;
+            case END_TAG_NAME:
+                if (isWhitespace(c) || c == '/') {
+                    state = AFTER_END_TAG_NAME;
+                } else if (c == '>') {
+                    handler.endTag(name);
+                    state = TEXT;
+                } else {
+                    name.append(c);
+                }
+                break;
+            case AFTER_END_TAG_NAME:
+                if (c == '>') {
+                    handler.endTag(name);
+                    state = TEXT;
+                } else if (!isWhitespace(c)) {
+                    handler.ambiguousMarkup();
+                }
+                break;
+            case BEFORE_ATTRIBUTE_NAME:
+                if (c == '/') {
+                    state = SELF_CLOSING_START_TAG;
+                } else if (c == '>') {
+                    endStartTag(false);
+                } else if (!isWhitespace(c)) {
+                    startAttribute(c);
+                }
+                break;
+            case ATTRIBUTE_NAME:
+                if (isWhitespace(c)) {
+                    state = AFTER_ATTRIBUTE_NAME;
+                } else if (c == '=') {
+                    state = BEFORE_ATTRIBUTE_VALUE;
+                } else if (c == '/') {
+                    valuelessAttribute();
+                    state = SELF_CLOSING_START_TAG;
+                } else if (c == '>') {
+                    valuelessAttribute();
+                    endStartTag(false);
+                } else {
+                    if (c == '"' || c == '\'' || c == '<') handler.ambiguousMarkup();
+                    attributeName.append(c);
+                }
+                break;
+            case AFTER_ATTRIBUTE_NAME:
+                if (c == '=') {
+                    state = BEFORE_ATTRIBUTE_VALUE;
+                } else if (c == '/') {
+                    valuelessAttribute();
+                    state = SELF_CLOSING_START_TAG;
+                } else if (c == '>') {
+                    valuelessAttribute();
+                    endStartTag(false);
+                } else if (!isWhitespace(c)) {
+                    valuelessAttribute();
+                    startAttribute(c);
+                }
+                break;
+            case BEFORE_ATTRIBUTE_VALUE:
+                attributeValue.setLength(0);
+                if (c == '"') {
+                    state = ATTRIBUTE_VALUE_DOUBLE_QUOTED;
+                } else if (c == '\'') {
+                    state = ATTRIBUTE_VALUE_SINGLE_QUOTED;
+                } else if (c == '>') {
+                    handler.ambiguousMarkup();
+                    handler.attribute(attributeName, attributeValue);
+                    endStartTag(false);
+                } else if (!isWhitespace(c)) {
+                    if (c == '<' || c == '=' || c == '`') handler.ambiguousMarkup();
+                    appendAttributeValue(c);
+                    state = ATTRIBUTE_VALUE_UNQUOTED;
+                }
+                break;
+            case ATTRIBUTE_VALUE_DOUBLE_QUOTED:
+            case ATTRIBUTE_VALUE_SINGLE_QUOTED:
+                if (c == (state == ATTRIBUTE_VALUE_DOUBLE_QUOTED ? '"' : '\'')) {
+                    handler.attribute(attributeName, attributeValue);
+                    state = AFTER_ATTRIBUTE_VALUE;
+                } else {
+                    appendAttributeValue(c);
+                }
+                break;
+            case ATTRIBUTE_VALUE_UNQUOTED:
+                if (isWhitespace(c)) {
+                    handler.attribute(attributeName, attributeValue);
+                    afterUnquotedValue = true;
+                    state = BEFORE_ATTRIBUTE_NAME;
+                } else if (c == '>') {
+                    handler.attribute(attributeName, attributeValue);
+                    endStartTag(false);
+                } else {
+                    if (c == '"' || c == '\'' || c == '=' || c == '<' || c == '`') handler.ambiguousMarkup();
+                    appendAttributeValue(c);
+                }
+                break;
+            case AFTER_ATTRIBUTE_VALUE:
+                if (isWhitespace(c)) {
+                    state = BEFORE_ATTRIBUTE_NAME;
+                } else if (c == '/') {
+                    state = SELF_CLOSING_START_TAG;
+                } else if (c == '>') {
+                    endStartTag(false);
+                } else {
+                    handler.ambiguousMarkup();
+                    startAttribute(c);
+                }
+                break;
+            case SELF_CLOSING_START_TAG:
+                if (c == '>') {
+                    endStartTag(true);
+                } else {
+                    state = BEFORE_ATTRIBUTE_NAME;
+                    consume(c);
+                }
+                break;
+            case MARKUP_DECLARATION:
+                if (c == '-') {
+                    state = COMMENT_START;
+                } else {
+                    startDirective();
+                    consume(c);
+                }
+                break;
+            case COMMENT_START:
+                if (c == '-') {
+                    commentDashes = 0;
+                    state = COMMENT;
+                } else {
+                    startDirective();
+                    consume(c);
+                }
+                break;
+            case COMMENT:
+                if (c == '>' && commentDashes >= 2) {
+                    state = TEXT;
+                } else {
+                    commentDashes = c == '-' ? commentDashes + 1 : 0;
+                }
+                break;
+            case DIRECTIVE:
+                // <!DOCTYPE ...>, <?xml ...?> and similar end at the first ">", quoted or not
+                if (c == '>') {
+                    if (directiveQuote != 0) handler.ambiguousMarkup();
+                    state = TEXT;
+                } else if (directiveQuote != 0) {
+                    if (c == directiveQuote) directiveQuote = 0;
+                } else if (c == '"' || c == '\'') {
+                    directiveQuote = c;
+                }
+                break;
+            case RAW_TEXT:
+                if (c == '<') state = RAW_TEXT_LESS_THAN;
+                break;
+            case RAW_TEXT_LESS_THAN:
+                if (c == '/') {
+                    rawTextMatched = 0;
+                    state = RAW_TEXT_END_TAG_NAME;
+                } else if (c != '<') {
+                    state = RAW_TEXT;
+                }
+                break;
+            case RAW_TEXT_END_TAG_NAME:
+                if (rawTextMatched < rawTextElement.length() && toLowerCase(c) == rawTextElement.charAt(rawTextMatched)) {
+                    rawTextMatched++;
+                } else if (rawTextMatched == rawTextElement.length() && (isWhitespace(c) || c == '/' || c == '>')) {
+                    name.setLength(0);
+                    name.append(rawTextElement);
+                    rawTextElement = null;
+                    state = END_TAG_NAME;
+                    consume(c);
+                } else {
+                    state = RAW_TEXT;
+                    consume(c);
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unknown tokenizer state " + state);
+        }
+    }
+
+    private void valuelessAttribute() {
+        // an HTML lexer may take a bare name after an unquoted value for part of that value
+        if (afterUnquotedValue) handler.ambiguousMarkup();
+        handler.attribute(attributeName, null);
+    }
+
+    private void startAttribute(char c) {
+        if (c == '=' || c == '"' || c == '\'' || c == '<') handler.ambiguousMarkup();
+        attributeName.setLength(0);
+        attributeName.append(c);
+        state = ATTRIBUTE_NAME;
+    }
+
+    private void appendAttributeValue(char c) {
+        if (attributeValue.length() >= maxAttributeValueLength) {
+            throw new ResourceLimitExceededException(ResourceLimitExceededException.Limit.ATTRIBUTE_VALUE_LENGTH, maxAttributeValueLength);
+        }
+        attributeValue.append(c);
+    }
+
+    private void startDirective() {
+        directiveQuote = 0;
+        state = DIRECTIVE;
+    }
+
+    private void endStartTag(boolean selfClosing) {
+        handler.startTagEnd(selfClosing);
+        String rawText = RAW_TEXT_ELEMENTS.get(name);
+        if (rawText == null) {
+            state = TEXT;
+            return;
+        }
+        // HTML keeps reading raw text even after a self-closing tag, SVG parsers would not
+        if (selfClosing || !"style".equals(rawText) && !"title".equals(rawText) && !"textarea".equals(rawText)) {
+            handler.ambiguousMarkup();
+        }
+        rawTextElement = rawText;
+        state = RAW_TEXT;
+    }
+
+    static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\f' || c == '\r';
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    static char toLowerCase(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    static String toLowerCase(CharSequence name) {
+        char[] lower = new char[name.length()];
+        for (int i = 0; i < lower.length; i++) {
+            lower[i] = toLowerCase(name.charAt(i));
+        }
+        return new String(lower);
+    }
+}
@@ -0,0 +1,18 @@
+package com.github.bgalek.security.svg;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Default executor of asynchronous validations. The multi-release jar replaces this class on Java 21
+ * and later with one that runs every validation on its own virtual thread.
+ */
+final class ValidationExecutors {
+
+    private ValidationExecutors() {
+    }
+
+    static Executor defaultExecutor() {
+        return ForkJoinPool.commonPool();
+    }
+}
@@ -0,0 +1,118 @@
+package com.github.bgalek.security.svg;
+
+/**
+ * Receives timings and outcomes of validations, see {@link SvgSecurityValidatorBuilder#withInstrumentation}.
+ * Methods are called on the validating thread, possibly from many threads at once, and must not throw.
+ * Every method does nothing by default, implement only what you need.
+ * {@link ValidationStatistics} is a ready implementation that aggregates everything into counters.
+ * <p>
+ * Implementations that have to act when a validation or stage begins, rather than be told its duration
+ * afterwards, implement {@link #validationStarted()} and {@link #stageStarted()}: whatever these return
+ * is passed back to the matching {@code validationCompleted}, {@code validationFailed} or {@code stageCompleted}
+ * overload taking it, which by default calls the overload without it.
+ */
+public interface ValidationInstrumentation {
+
+    /**
+     * Parts of a validation that are timed separately. A validation runs only some of them, depending
+     * on the configuration and on the input.
+     */
+    enum Stage {
+        /**
+         * Tokenizing the input to enforce markup resource limits before the other stages.
+         */
+        MARKUP_LIMITS,
+        /**
+         * Parsing the input to check it is well-formed XML.
+         */
+        SYNTAX,
+        /**
+         * Scanning for script tags and javascript URLs.
+         */
+        DANGEROUS_CONTENT,
+        /**
+         * Checking the input against the allow-lists to skip the sanitizer.
+         */
+        CLEAN_INPUT_CHECK,
+        /**
+         * Running the sanitizer policy.
+         */
+        SANITIZER,
+        /**
+         * Reading the input once with all checks combined, stages run for markup this pass cannot
+         * judge are reported on their own afterwards.
+         */
+        SINGLE_PASS
+    }
+
+    /**
+     * Called when a validation starts, before its input is read.
+     *
+     * @return passed back once the validation completes or fails, null by default
+     */
+    default Object validationStarted() {
+        return null;
+    }
+
+    /**
+     * Called when a stage starts, before it reads its input.
+     *
+     * @return passed back once the stage completes, null by default
+     */
+    default Object stageStarted() {
+        return null;
+    }
+
+    /**
+     * @param stage the stage that ran
+     * @param nanos how long it took
+     */
+    default void stageCompleted(Stage stage, long nanos) {
+    }
+
+    /**
+     * @param started   what {@link #stageStarted()} returned
+     * @param stage     the stage that ran
+     * @param inputSize chars the stage read
+     * @param nanos     how long it took
+     */
+    default void stageCompleted(Object started, Stage stage, long inputSize, long nanos) {
+        stageCompleted(stage, nanos);
+    }
+
+    /**
+     * @param inputSize chars of {@code String} inputs, bytes of any other input
+     * @param nanos     how long the whole validation took
+     * @param result    the verdict, answered from the result cache or not
+     */
+    default void validationCompleted(long inputSize, long nanos, ValidationResult result) {
+    }
+
+    /**
+     * @param started   what {@link #validationStarted()} returned
+     * @param inputSize chars of {@code String} inputs, bytes of any other input
+     * @param nanos     how long the whole validation took
+     * @param result    the verdict, answered from the result cache or not
+     */
+    default void validationCompleted(Object started, long inputSize, long nanos, ValidationResult result) {
+        validationCompleted(inputSize, nanos, result);
+    }
+
+    /**
+     * @param inputSize chars of {@code String} inputs, bytes of any other input read until the failure
+     * @param nanos     how long the validation ran before it failed
+     * @param failure   the exception the validation is about to throw
+     */
+    default void validationFailed(long inputSize, long nanos, Exception failure) {
+    }
+
+    /**
+     * @param started   what {@link #validationStarted()} returned
+     * @param inputSize chars of {@code String} inputs, bytes of any other input read until the failure
+     * @param nanos     how long the validation ran before it failed
+     * @param failure   the exception the validation is about to throw
+     */
+    default void validationFailed(Object started, long inputSize, long nanos, Exception failure) {
+        validationFailed(inputSize, nanos, failure);
+    }
+}
@@ -0,0 +1,81 @@
+package com.github.bgalek.security.svg;
+
+import java.util.Set;
+
+/**
+ * A check of your own that runs as part of every validation, see {@link SvgSecurityValidatorBuilder#withStage}.
+ * <p>
+ * Stages do not read the input themselves. They are handed the chunks of input and the tags and attributes
+ * of the one pass the built-in checks already share, so adding a stage does not add another pass over the input.
+ * <p>
+ * Every stage has a cost, built-in stages included, and stages are consulted cheapest first: the verdict
+ * is that of the cheapest stage reporting violations. Stages costing more are not consulted then, the
+ * sanitizer, costliest of all, does not run, and in fail-fast mode reading stops as soon as any stage
+ * reports a violation. Built-in stages go first among stages of the same cost.
+ * <p>
+ * A stage is shared by every validation of the validator, possibly on many threads at once;
+ * each validation works with a {@link Check} of its own.
+ */
+public interface ValidationStage {
+
+    /**
+     * Cost of the built-in scan for script tags and javascript URLs, which reads every char once.
+     */
+    int DANGEROUS_CONTENT_COST = 100;
+
+    /**
+     * Cost of the built-in allow-list check: elements and attributes not allowed, as the sanitizer reports them.
+     */
+    int ALLOW_LIST_COST = 1000;
+
+    /**
+     * @return relative cost of the stage, compared with {@link #DANGEROUS_CONTENT_COST} and {@link #ALLOW_LIST_COST}
+     */
+    int cost();
+
+    /**
+     * @return a check of one input, used by one thread at a time
+     */
+    Check newCheck();
+
+    /**
+     * Checks one input as it is read. Names, values and chunks are only valid during the call.
+     * Every method but {@link #getViolations()} does nothing by default, implement only what you need.
+     * Methods must not throw, except to reject the input altogether.
+     */
+    interface Check {
+
+        /**
+         * @param chunk the next chars of the input, in order
+         */
+        default void characters(CharSequence chunk) {
+        }
+
+        /**
+         * @param name element name as written
+         */
+        default void startTag(CharSequence name) {
+        }
+
+        /**
+         * @param name  attribute name as written
+         * @param value attribute value with its quotes removed and references left as they are,
+         *              null for attributes without one
+         */
+        default void attribute(CharSequence name, CharSequence value) {
+        }
+
+        /**
+         * @param name element name as written
+         */
+        default void endTag(CharSequence name) {
+        }
+
+        /**
+         * Called as input is read and once it has all been read.
+         *
+         * @return names of the offending elements or attributes found so far, empty while there are none
+         */
+        Set<String> getViolations();
+    }
+}
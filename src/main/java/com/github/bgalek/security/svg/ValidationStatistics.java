@@ -0,0 +1,139 @@
+package com.github.bgalek.security.svg;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link ValidationInstrumentation} that aggregates into monotonic counters, cheap to update from many
+ * threads at once. The getters read live values, so they can back function counters of a metrics
+ * library (Micrometer {@code FunctionCounter} and the like) directly.
+ */
+public final class ValidationStatistics implements ValidationInstrumentation {
+    private final Map<Stage, LongAdder> stageCounts = new EnumMap<>(Stage.class);
+    private final Map<Stage, LongAdder> stageNanos = new EnumMap<>(Stage.class);
+    private final LongAdder cleanCount = new LongAdder();
+    private final LongAdder violatingCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+    private final LongAdder validationNanos = new LongAdder();
+    private final LongAdder inputSize = new LongAdder();
+    private final ConcurrentHashMap<String, LongAdder> offendingElementCounts = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LongAdder> failureCounts = new ConcurrentHashMap<>();
+
+    public ValidationStatistics() {
+        for (Stage stage : Stage.values()) {
+            stageCounts.put(stage, new LongAdder());
+            stageNanos.put(stage, new LongAdder());
+        }
+    }
+
+    @Override
+    public void stageCompleted(Stage stage, long nanos) {
+        stageCounts.get(stage).increment();
+        stageNanos.get(stage).add(nanos);
+    }
+
+    @Override
+    public void validationCompleted(long inputSize, long nanos, ValidationResult result) {
+        (result.hasViolations() ? violatingCount : cleanCount).increment();
+        record(inputSize, nanos);
+        for (String offendingElement : result.getOffendingElements()) {
+            increment(offendingElementCounts, offendingElement);
+        }
+    }
+
+    @Override
+    public void validationFailed(long inputSize, long nanos, Exception failure) {
+        failedCount.increment();
+        record(inputSize, nanos);
+        increment(failureCounts, failure.getClass().getSimpleName());
+    }
+
+    /**
+     * @return number of validations that found nothing
+     */
+    public long getCleanCount() {
+        return cleanCount.sum();
+    }
+
+    /**
+     * @return number of validations that found violations
+     */
+    public long getViolatingCount() {
+        return violatingCount.sum();
+    }
+
+    /**
+     * @return number of validations that threw, for example on invalid syntax or an exceeded limit
+     */
+    public long getFailedCount() {
+        return failedCount.sum();
+    }
+
+    /**
+     * @return total time spent in validations, failed ones included
+     */
+    public long getValidationNanos() {
+        return validationNanos.sum();
+    }
+
+    /**
+     * @return total size of the validated inputs, see {@link ValidationInstrumentation#validationCompleted}
+     */
+    public long getInputSize() {
+        return inputSize.sum();
+    }
+
+    /**
+     * @return number of times the stage ran
+     */
+    public long getStageCount(Stage stage) {
+        return stageCounts.get(stage).sum();
+    }
+
+    /**
+     * @return total time spent in the stage
+     */
+    public long getStageNanos(Stage stage) {
+        return stageNanos.get(stage).sum();
+    }
+
+    /**
+     * @return how many validations reported each offending element or attribute, by name
+     */
+    public Map<String, Long> getOffendingElementCounts() {
+        return snapshot(offendingElementCounts);
+    }
+
+    /**
+     * @return how many validations failed with each exception, by simple class name
+     */
+    public Map<String, Long> getFailureCounts() {
+        return snapshot(failureCounts);
+    }
+
+    private void record(long inputSize, long nanos) {
+        validationNanos.add(nanos);
+        this.inputSize.add(inputSize);
+    }
+
+    private static void increment(ConcurrentHashMap<String, LongAdder> counts, String name) {
+        counts.computeIfAbsent(name, key -> new LongAdder()).increment();
+    }
+
+    private static Map<String, Long> snapshot(ConcurrentHashMap<String, LongAdder> counts) {
+        Map<String, Long> snapshot = new TreeMap<>();
+        counts.forEach((name, count) -> snapshot.put(name, count.sum()));
+        return Collections.unmodifiableMap(snapshot);
+    }
+
+    @Override
+    public String toString() {
+        return "ValidationStatistics{cleanCount=" + getCleanCount() + ", violatingCount=" + getViolatingCount()
+                + ", failedCount=" + getFailedCount() + ", validationNanos=" + getValidationNanos()
+                + ", inputSize=" + getInputSize() + '}';
+    }
+}
@@ -0,0 +1,24 @@
+package com.github.bgalek.security.svg;
+
+import java.time.Duration;
+
+/**
+ * Thrown when a validation does not finish within the time budget configured on
+ * {@link SvgSecurityValidatorBuilder#withTimeBudget(Duration)}. The validation has stopped by then,
+ * no work is left running in the background.
+ */
+public class ValidationTimeoutException extends RuntimeException {
+    private final Duration budget;
+
+    ValidationTimeoutException(Duration budget) {
+        super("Validation did not finish within " + budget);
+        this.budget = budget;
+    }
+
+    /**
+     * @return the time budget that was exceeded
+     */
+    public Duration getBudget() {
+        return budget;
+    }
+}
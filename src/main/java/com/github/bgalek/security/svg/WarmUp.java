@@ -0,0 +1,60 @@
+package com.github.bgalek.security.svg;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Validates a few small samples that take every path of the engines, clean and rejected, valid and malformed,
+ * so that class loading, static initialization and JIT compilation happen before the first real validation,
+ * see {@link SvgSecurityValidatorBuilder#buildWarmedUp(int)}.
+ */
+final class WarmUp {
+    static final int DEFAULT_ROUNDS = 50;
+
+    private static final String SVG = "<svg xmlns=\"http://www.w3.org/2000/svg\" xmlns:xlink=\"http://www.w3.org/1999/xlink\""
+            + " width=\"24\" height=\"24\" viewBox=\"0 0 24 24\">";
+    private static final String[] SAMPLES = {
+            SVG + "<g fill=\"none\" stroke=\"#000\"><path d=\"M0 0h24v24H0z\"/><circle cx=\"12\" cy=\"12\" r=\"4\" style=\"fill:#fff\"/>"
+                    + "</g><text x=\"2\" y=\"20\">&amp;</text></svg>",
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<!DOCTYPE svg [<!ENTITY size \"24\">]>\n"
+                    + SVG + "<rect width=\"&size;\" height=\"&size;\"/></svg>",
+            SVG + "<script type=\"text/javascript\">alert(1)</script></svg>",
+            SVG + "<rect width=\"1\" height=\"1\" onclick=\"alert(1)\"/></svg>",
+            SVG + "<rect style=\"fill:url(javascript:alert(1))\"/><use xlink:href=\"javascript:alert(1)\"/></svg>",
+            SVG + "<foreignObject><a href=\"javascript:alert(1)\">x</a></foreignObject></svg>",
+            SVG + "<g><rect></g></svg>"
+    };
+
+    private WarmUp() {
+    }
+
+    static void run(SvgSecurityValidator validator, int rounds) {
+        for (int round = 0; round < rounds; round++) {
+            for (String sample : SAMPLES) {
+                byte[] bytes = sample.getBytes(StandardCharsets.UTF_8);
+                validate(() -> validator.validate(sample));
+                validate(() -> validator.validate(bytes));
+                validate(() -> validator.validate(new ByteArrayInputStream(bytes)));
+                validate(() -> validator.sanitize(sample));
+            }
+        }
+    }
+
+    private static void validate(Validation validation) {
+        try {
+            validation.validate();
+        } catch (InvalidXMLSyntaxException | ForbiddenPrologException | ResourceLimitExceededException
+                 | ValidationTimeoutException e) {
+            // rejecting samples is just as much part of the warm-up, whatever the configuration
+        } catch (IOException e) {
+            // streams over byte arrays do not fail
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private interface Validation {
+        void validate() throws IOException;
+    }
+}
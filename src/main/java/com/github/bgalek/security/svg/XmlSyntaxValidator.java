@@ -0,0 +1,117 @@
+package com.github.bgalek.security.svg;
+
+import org.xml.sax.SAXParseException;
+
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Checks that the input is well-formed XML by streaming it through an XXE-hardened StAX parser.
+ * No document tree is built, so memory use does not depend on the size of the input.
+ * <p>
+ * {@link XMLInputFactory} implementations cache and reuse their readers, so each call borrows
+ * a factory from a bounded pool and hands it back afterwards. Callers never wait: when the pool
+ * is empty a new factory is created, and factories that do not fit back into the pool are dropped.
+ */
+class XmlSyntaxValidator {
+    private static final int MAX_IDLE_FACTORIES = Runtime.getRuntime().availableProcessors() * 2;
+    private static final String JDK_IGNORE_EXTERNAL_DTD = "http://java.sun.com/xml/stream/properties/ignore-external-dtd";
+
+    private final BlockingQueue<XMLInputFactory> idleFactories = new ArrayBlockingQueue<>(MAX_IDLE_FACTORIES);
+
+    XmlSyntaxValidator() {
+        // fail fast on an unsupported parser configuration instead of on the first validation
+        this.idleFactories.offer(hardenedInputFactory());
+    }
+
+    void validate(String input) {
+        validate(new StringReader(input));
+    }
+
+    void validate(Reader input) {
+        XMLInputFactory inputFactory = borrowFactory();
+        try {
+            XMLStreamReader xmlReader = inputFactory.createXMLStreamReader(input);
+            try {
+                drain(xmlReader);
+            } finally {
+                xmlReader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw syntaxError(e.getLocation(), stripLocationPrefix(e.getMessage()), e);
+        } finally {
+            idleFactories.offer(inputFactory);
+        }
+    }
+
+    private static void drain(XMLStreamReader xmlReader) throws XMLStreamException {
+        boolean standalone = xmlReader.standaloneSet() && xmlReader.isStandalone();
+        boolean externalSubset = false;
+        while (xmlReader.hasNext()) {
+            switch (xmlReader.next()) {
+                case XMLStreamConstants.DTD:
+                    externalSubset = declaresExternalSubset(xmlReader.getText());
+                    break;
+                case XMLStreamConstants.ENTITY_REFERENCE:
+                    // Entity references are reported instead of expanded (this is what keeps billion-laughs
+                    // documents cheap), so the parser no longer flags undeclared ones by itself. They are
+                    // only tolerated when they may come from an external subset that is never loaded.
+                    if (xmlReader.getText() == null && (standalone || !externalSubset)) {
+                        throw syntaxError(xmlReader.getLocation(),
+                                "The entity \"" + xmlReader.getLocalName() + "\" was referenced, but not declared.", null);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private static boolean declaresExternalSubset(String doctype) {
+        int internalSubset = doctype.indexOf('[');
+        String declaration = internalSubset < 0 ? doctype : doctype.substring(0, internalSubset);
+        return declaration.contains("SYSTEM") || declaration.contains("PUBLIC");
+    }
+
+    private XMLInputFactory borrowFactory() {
+        XMLInputFactory inputFactory = idleFactories.poll();
+        return inputFactory != null ? inputFactory : hardenedInputFactory();
+    }
+
+    private static XMLInputFactory hardenedInputFactory() {
+        XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+        inputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        inputFactory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        // Harden against XXE and entity-expansion (billion laughs) attacks. A DOCTYPE declaration
+        // is still allowed because many legitimate SVGs ship one, but external entities and DTDs
+        // are never resolved and entity references are reported rather than expanded.
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, true);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        inputFactory.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, false);
+        inputFactory.setXMLResolver((publicId, systemId, baseUri, namespace) -> new ByteArrayInputStream(new byte[0]));
+        if (inputFactory.isPropertySupported(JDK_IGNORE_EXTERNAL_DTD)) {
+            inputFactory.setProperty(JDK_IGNORE_EXTERNAL_DTD, true);
+        }
+        return inputFactory;
+    }
+
+    private static InvalidXMLSyntaxException syntaxError(Location location, String message, Exception cause) {
+        int lineNumber = location != null ? location.getLineNumber() : -1;
+        int columnNumber = location != null ? location.getColumnNumber() : -1;
+        return new InvalidXMLSyntaxException(new SAXParseException(message, null, null, lineNumber, columnNumber, cause));
+    }
+
+    private static String stripLocationPrefix(String message) {
+        // StAX prefixes messages with "ParseError at [row,col]:[x,y]\nMessage: ", the location is reported separately
+        int start = message == null ? -1 : message.indexOf("Message: ");
+        return start < 0 ? message : message.substring(start + "Message: ".length());
+    }
+}
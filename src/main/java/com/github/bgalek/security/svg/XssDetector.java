@@ -1,7 +1,20 @@
 package com.github.bgalek.security.svg;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
 interface XssDetector {
     ValidationResult validate(String input);
 
     ValidationResult validate(byte[] input);
+
+    ValidationResult validate(byte[] input, int offset, int length);
+
+    ValidationResult validate(ByteBuffer input);
+
+    ValidationResult validate(InputStream input) throws IOException;
+
+    ValidationResult validate(Path input) throws IOException;
 }
@@ -0,0 +1,21 @@
+package com.github.bgalek.security.svg;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Default executor of asynchronous validations on Java 21 and later: every validation runs on its own
+ * virtual thread, so validations that block reading their input do not hold on to a platform thread.
+ * Validations are CPU-bound, at most as many run at once as there are carrier threads.
+ */
+final class ValidationExecutors {
+    private static final Executor VIRTUAL_THREADS =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("svg-validation-", 0).factory());
+
+    private ValidationExecutors() {
+    }
+
+    static Executor defaultExecutor() {
+        return VIRTUAL_THREADS;
+    }
+}
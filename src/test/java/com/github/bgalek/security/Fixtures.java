@@ -0,0 +1,178 @@
+package com.github.bgalek.security;
+
+import com.github.bgalek.security.svg.IncrementalValidation;
+import com.github.bgalek.security.svg.InvalidXMLSyntaxException;
+import com.github.bgalek.security.svg.SvgSecurityValidator;
+import com.github.bgalek.security.svg.ValidationResult;
+import org.junit.jupiter.params.provider.Arguments;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Svg files under src/test/resources, grouped by what the validator is expected to make of them,
+ * and helpers shared by the validator tests.
+ */
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    static Stream<Arguments> safeUseCases() {
+        return Stream.of(
+                Arguments.of("safe/valid1.svg"),
+                Arguments.of("safe/valid2.svg"),
+                Arguments.of("safe/valid3.svg")
+        );
+    }
+
+    static Stream<Arguments> evilUseCases() {
+        return Stream.of(
+                Arguments.of("hacked/with-onclick-attribute.svg", "onclick"),
+                Arguments.of("hacked/with-script-tag.svg", "script"),
+                Arguments.of("hacked/with-script-tag-in-styles.svg", "script"),
+                Arguments.of("hacked/with-invalid-script-tag-in-styles.svg", "script"),
+                Arguments.of("hacked/with-css-url-syntax.svg", "style"),
+                Arguments.of("hacked/with-uppercase-css-url-syntax.svg", "style"),
+                Arguments.of("hacked/with-single-quoted-script-tag-in-styles.svg", "script"),
+                Arguments.of("hacked/with-uppercase-script-tag.svg", "script"),
+                Arguments.of("hacked/with-spaced-script-tag.svg", "script"),
+                Arguments.of("hacked/with-onload-attribute.svg", "onload"),
+                Arguments.of("hacked/with-onerror-attribute.svg", "onerror"),
+                Arguments.of("hacked/with-data-uri-in-href.svg", "href"),
+                Arguments.of("hacked/with-xlink-href-javascript-on-image.svg", "xlink:href"),
+                Arguments.of("hacked/with-xlink-href-javascript-on-use.svg", "xlink:href"),
+                Arguments.of("hacked/with-xlink-injection.svg", "script")
+        );
+    }
+
+    static Stream<Arguments> xxeUseCases() {
+        return Stream.of(
+                Arguments.of("xxe/with-external-entity.svg"),
+                Arguments.of("xxe/billion-laughs.svg")
+        );
+    }
+
+    static Stream<Arguments> brokenUseCases() {
+        return Stream.of(
+                Arguments.of("broken/broken.syntax.svg"),
+                Arguments.of("broken/broken.csv.svg"),
+                Arguments.of("broken/broken.png.svg")
+        );
+    }
+
+    static Stream<Arguments> customUseCases() {
+        return Stream.of(
+                Arguments.of("custom/custom1.svg"),
+                Arguments.of("custom/custom2.svg"),
+                Arguments.of("custom/custom3.svg")
+        );
+    }
+
+    static Stream<Arguments> allFiles() {
+        return Stream.of(safeUseCases(), evilUseCases(), xxeUseCases(), brokenUseCases(), customUseCases())
+                .flatMap(useCases -> useCases)
+                .map(useCase -> Arguments.of(useCase.get()[0]));
+    }
+
+    static String loadFile(String fileName) {
+        // read as a resource stream, native images keep resources inside the executable
+        try (InputStream input = Objects.requireNonNull(ClassLoader.getSystemClassLoader().getResourceAsStream(fileName))) {
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                content.write(buffer, 0, read);
+            }
+            return new String(content.toByteArray());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static Path resourcePath(String fileName) {
+        return new File(Objects.requireNonNull(ClassLoader.getSystemClassLoader().getResource(fileName)).getFile()).toPath();
+    }
+
+    static String outcome(SvgSecurityValidator validator, String file) {
+        try {
+            return String.join(",", validator.validate(loadFile(file)).getOffendingElements());
+        } catch (InvalidXMLSyntaxException e) {
+            return "invalid syntax";
+        }
+    }
+
+    static String outcome(StreamValidation validation) {
+        try {
+            return String.join(",", validation.validate().getOffendingElements());
+        } catch (InvalidXMLSyntaxException e) {
+            return "invalid syntax";
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    interface StreamValidation {
+        ValidationResult validate() throws IOException;
+    }
+
+    static ValidationResult validateInChunks(SvgSecurityValidator validator, byte[] content, int chunkSize) {
+        try (IncrementalValidation validation = validator.newIncrementalValidation()) {
+            for (int offset = 0; offset < content.length; offset += chunkSize) {
+                validation.feed(content, offset, Math.min(chunkSize, content.length - offset));
+            }
+            return validation.finish();
+        }
+    }
+
+    static InputStream endless(String head, String repeated) {
+        byte[] headBytes = head.getBytes(StandardCharsets.UTF_8);
+        byte[] repeatedBytes = repeated.getBytes(StandardCharsets.UTF_8);
+        return new InputStream() {
+            private long position;
+
+            @Override
+            public int read() {
+                long offset = position++;
+                if (offset < headBytes.length) return headBytes[(int) offset];
+                return repeatedBytes[(int) ((offset - headBytes.length) % repeatedBytes.length)];
+            }
+        };
+    }
+
+    static byte[] gzip(byte[] content) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream output = new GZIPOutputStream(compressed)) {
+            output.write(content);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return compressed.toByteArray();
+    }
+
+    static long countReplayFiles() throws IOException {
+        try (Stream<Path> files = Files.list(new File(System.getProperty("java.io.tmpdir")).toPath())) {
+            return files.filter(file -> file.getFileName().toString().startsWith("svg-replay")).count();
+        }
+    }
+
+    static ValidationResult join(CompletableFuture<ValidationResult> result) {
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.github.bgalek.security;
+
+import com.github.bgalek.security.svg.IncrementalValidation;
+import com.github.bgalek.security.svg.ResourceLimitExceededException;
+import com.github.bgalek.security.svg.SvgSecurityValidator;
+import com.github.bgalek.security.svg.SvgSecurityValidatorBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static com.github.bgalek.security.Fixtures.countReplayFiles;
+import static com.github.bgalek.security.Fixtures.loadFile;
+import static com.github.bgalek.security.Fixtures.outcome;
+import static com.github.bgalek.security.Fixtures.validateInChunks;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IncrementalValidationTest {
+
+    @MethodSource("filesAndValidators")
+    @ParameterizedTest(name = "validate {0} svg incrementally {1}")
+    void shouldReportSameResultsIncrementally(String file, String description, Supplier<SvgSecurityValidatorBuilder> builder) {
+        SvgSecurityValidator validator = builder.get().build();
+        byte[] content = loadFile(file).getBytes(StandardCharsets.UTF_8);
+        for (int chunkSize : new int[]{1, 3, 7, 64, 4096}) {
+            assertEquals(outcome(validator, file), outcome(() -> validateInChunks(validator, content, chunkSize)), "chunks of " + chunkSize);
+        }
+    }
+
+    @Test
+    void shouldDecodeCharactersSplitBetweenChunks() {
+        String svg = "<svg xmlns=\"http://www.w3.org/2000/svg\"><text>za\u017c\u00f3\u0142\u0107 \ud83d\ude00</text><\u0073cript/></svg>";
+        byte[] content = svg.getBytes(StandardCharsets.UTF_8);
+        byte[] malformed = Arrays.copyOf(content, content.length + 2);
+        malformed[content.length] = (byte) 0xF0;
+        malformed[content.length + 1] = (byte) 0x9F;
+        SvgSecurityValidator validator = SvgSecurityValidator.builder().build();
+        for (int chunkSize = 1; chunkSize <= 5; chunkSize++) {
+            assertEquals(Collections.singleton("script"), validateInChunks(validator, content, chunkSize).getOffendingElements());
+            assertEquals(Collections.singleton("script"), validateInChunks(validator, malformed, chunkSize).getOffendingElements());
+        }
+    }
+
+    @MethodSource("validators")
+    @ParameterizedTest(name = "reject upload before it ends {0}")
+    void shouldRejectIncrementalUploadBeforeItEnds(String description, Supplier<SvgSecurityValidatorBuilder> builder) {
+        try (IncrementalValidation validation = builder.get().build().newIncrementalValidation()) {
+            validation.feed("<svg xmlns=\"http://www.w3.org/2000/svg\"><script>".getBytes(StandardCharsets.UTF_8));
+            byte[] rect = "<rect width=\"1\" height=\"1\"/>".getBytes(StandardCharsets.UTF_8);
+            for (int i = 0; i < 10_000 && !validation.isRejected(); i++) {
+                validation.feed(rect);
+            }
+            assertTrue(validation.isRejected());
+        }
+    }
+
+    @Test
+    void shouldCountIncrementalParsersAsPendingValidations() {
+        SvgSecurityValidator validator = SvgSecurityValidator.builder().withSyntaxValidation().withMaxPendingValidations(1).build();
+        byte[] content = loadFile("safe/valid1.svg").getBytes(StandardCharsets.UTF_8);
+        try (IncrementalValidation validation = validator.newIncrementalValidation()) {
+            Assertions.assertThrows(RejectedExecutionException.class, validator::newIncrementalValidation);
+            validation.feed(content);
+            assertFalse(validation.finish().hasViolations());
+        }
+        assertFalse(validateInChunks(validator, content, 64).hasViolations());
+    }
+
+    @Test
+    void shouldAbortIncrementalValidationAtMaxInputSize() {
+        SvgSecurityValidator validator = SvgSecurityValidator.builder().withSyntaxValidation().withMaxInputSize(1 << 16).build();
+        IncrementalValidation validation = validator.newIncrementalValidation();
+        validation.feed("<svg xmlns=\"http://www.w3.org/2000/svg\">".getBytes(StandardCharsets.UTF_8));
+        byte[] rect = "<rect/>".getBytes(StandardCharsets.UTF_8);
+        ResourceLimitExceededException exception = Assertions.assertThrows(ResourceLimitExceededException.class, () -> {
+            while (true) {
+                validation.feed(rect);
+            }
+        });
+        assertEquals(ResourceLimitExceededException.Limit.INPUT_SIZE, exception.getLimit());
+        Assertions.assertThrows(IllegalStateException.class, validation::finish);
+    }
+
+    @MethodSource("validators")
+    @ParameterizedTest(name = "replay ambiguous upload larger than replay buffer {0}")
+    void shouldReplayAmbiguousUploadLargerThanReplayBuffer(String description, Supplier<SvgSecurityValidatorBuilder> builder) throws IOException {
+        String element = "<rect x=\"0\" y=\"0\" width=\"10\" height=\"10\" fill=\"#000\"/>\n";
+        String rects = String.join("", Collections.nCopies(4 * 1024 * 1024 / element.length(), element));
+        byte[] clean = ("<svg xmlns=\"http://www.w3.org/2000/svg\">\n<title/>" + rects + "</svg>").getBytes(StandardCharsets.UTF_8);
+        byte[] evil = ("<svg xmlns=\"http://www.w3.org/2000/svg\">\n<use href=\"&#35;a\"/>" + rects + "<rect onclick=\"alert(1)\"/></svg>")
+                .getBytes(StandardCharsets.UTF_8);
+        SvgSecurityValidator validator = builder.get().build();
+        long spilled = countReplayFiles();
+        assertFalse(validateInChunks(validator, clean, 65536).hasViolations());
+        assertEquals(Collections.singleton("onclick"), validateInChunks(validator, evil, 65536).getOffendingElements());
+        assertEquals(spilled, countReplayFiles());
+    }
+
+    private static Stream<Arguments> validators() {
+        return Stream.of(
+                Arguments.of("by default", (Supplier<SvgSecurityValidatorBuilder>) SvgSecurityValidator::builder),
+                Arguments.of("with syntax validation", (Supplier<SvgSecurityValidatorBuilder>) () -> SvgSecurityValidator.builder().withSyntaxValidation())
+        );
+    }
+
+    private static Stream<Arguments> filesAndValidators() {
+        return Fixtures.allFiles().flatMap(file -> validators()
+                .map(validator -> Arguments.of(file.get()[0], validator.get()[0], validator.get()[1])));
+    }
+}
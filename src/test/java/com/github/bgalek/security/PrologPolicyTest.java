@@ -0,0 +1,98 @@
+package com.github.bgalek.security;
+
+import com.github.bgalek.security.svg.ForbiddenPrologException;
+import com.github.bgalek.security.svg.PrologPolicy;
+import com.github.bgalek.security.svg.SvgSecurityValidator;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static com.github.bgalek.security.Fixtures.loadFile;
+import static com.github.bgalek.security.Fixtures.validateInChunks;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class PrologPolicyTest {
+
+    @MethodSource("prologPolicyUseCases")
+    @ParameterizedTest(name = "reject {0} when prolog policy is {1}")
+    void shouldRejectForbiddenPrologBeforeParsing(String file, String policyName, PrologPolicy policy, ForbiddenPrologException.Reason expectedReason) {
+        SvgSecurityValidator validator = SvgSecurityValidator.builder().withSyntaxValidation().withPrologPolicy(policy).build();
+        byte[] content = loadFile(file).getBytes(StandardCharsets.UTF_8);
+        List<Fixtures.StreamValidation> validations = Arrays.asList(
+                () -> validator.validate(loadFile(file)),
+                () -> validator.validate(content),
+                () -> validator.validate(new ByteArrayInputStream(content)),
+                () -> validator.sanitize(loadFile(file)),
+                () -> validateInChunks(validator, content, 7));
+        for (Fixtures.StreamValidation validation : validations) {
+            ForbiddenPrologException exception = Assertions.assertThrows(ForbiddenPrologException.class, validation::validate);
+            assertEquals(expectedReason, exception.getReason());
+        }
+    }
+
+    @MethodSource("forbiddenPrologs")
+    @ParameterizedTest(name = "reject prolog {0}")
+    void shouldRejectEntityDeclarationsBeyondPolicy(String prolog, ForbiddenPrologException.Reason expectedReason) {
+        SvgSecurityValidator validator = SvgSecurityValidator.builder().withPrologPolicy(PrologPolicy.allowInternalEntities(2)).build();
+        ForbiddenPrologException exception = Assertions.assertThrows(ForbiddenPrologException.class,
+                () -> validator.validate(prolog + "<svg xmlns=\"http://www.w3.org/2000/svg\"><rect/></svg>"));
+        assertEquals(expectedReason, exception.getReason());
+    }
+
+    @MethodSource("allowedPrologs")
+    @ParameterizedTest(name = "accept prolog {0}")
+    void shouldAcceptPrologAllowedByPolicy(String prolog) {
+        SvgSecurityValidator validator = SvgSecurityValidator.builder().withPrologPolicy(PrologPolicy.allowInternalEntities(2)).build();
+        assertFalse(validator.validate(prolog + "<svg xmlns=\"http://www.w3.org/2000/svg\"><rect/></svg>").hasViolations());
+    }
+
+    @MethodSource("com.github.bgalek.security.Fixtures#safeUseCases")
+    @ParameterizedTest(name = "accept {0} svg without DOCTYPE")
+    void shouldAcceptSafeFilesWhenDoctypeIsForbidden(String file) {
+        SvgSecurityValidator validator = SvgSecurityValidator.builder().withSyntaxValidation().withPrologPolicy(PrologPolicy.forbidDoctype()).build();
+        assertFalse(validator.validate(loadFile(file)).hasViolations());
+    }
+
+    private static Stream<Arguments> prologPolicyUseCases() {
+        return Stream.of(
+                Arguments.of("xxe/billion-laughs.svg", "forbidDoctype", PrologPolicy.forbidDoctype(), ForbiddenPrologException.Reason.DOCTYPE),
+                Arguments.of("xxe/billion-laughs.svg", "forbidEntities", PrologPolicy.forbidEntities(), ForbiddenPrologException.Reason.ENTITY),
+                Arguments.of("xxe/billion-laughs.svg", "allowInternalEntities(10)", PrologPolicy.allowInternalEntities(10), ForbiddenPrologException.Reason.NESTED_ENTITY),
+                Arguments.of("xxe/billion-laughs.svg", "allowInternalEntities(3)", PrologPolicy.allowInternalEntities(3), ForbiddenPrologException.Reason.NESTED_ENTITY),
+                Arguments.of("xxe/with-external-entity.svg", "forbidDoctype", PrologPolicy.forbidDoctype(), ForbiddenPrologException.Reason.DOCTYPE),
+                Arguments.of("xxe/with-external-entity.svg", "forbidEntities", PrologPolicy.forbidEntities(), ForbiddenPrologException.Reason.ENTITY),
+                Arguments.of("xxe/with-external-entity.svg", "allowInternalEntities(10)", PrologPolicy.allowInternalEntities(10), ForbiddenPrologException.Reason.EXTERNAL_ENTITY)
+        );
+    }
+
+    private static Stream<Arguments> forbiddenPrologs() {
+        return Stream.of(
+                Arguments.of("<!DOCTYPE svg [<!ENTITY a \"a\"><!ENTITY b \"b\"><!ENTITY c \"c\">]>", ForbiddenPrologException.Reason.ENTITY_COUNT),
+                Arguments.of("<!DOCTYPE svg [<!ENTITY a SYSTEM \"https://example.com/a\">]>", ForbiddenPrologException.Reason.EXTERNAL_ENTITY),
+                Arguments.of("<!DOCTYPE svg [<!ENTITY a PUBLIC \"-//A//EN\" \"a.dtd\">]>", ForbiddenPrologException.Reason.EXTERNAL_ENTITY),
+                Arguments.of("<!DOCTYPE svg [<!ENTITY % a \"a\">]>", ForbiddenPrologException.Reason.PARAMETER_ENTITY),
+                Arguments.of("<!DOCTYPE svg SYSTEM \"svg.dtd\" [%a;]>", ForbiddenPrologException.Reason.PARAMETER_ENTITY),
+                Arguments.of("<!DOCTYPE svg [<!ENTITY a \"a\"><!ENTITY b '&a;&a;'>]>", ForbiddenPrologException.Reason.NESTED_ENTITY),
+                Arguments.of("<!DOCTYPE svg [<!ENTITY a \"a\"><!ENTITY b \"&#38;a;&#38;a;\">]>", ForbiddenPrologException.Reason.NESTED_ENTITY),
+                Arguments.of("<!DOCTYPE svg [<!ENTITY a \"a\"><!ENTITY b \"&#x26;a;&#x26;a;\">]>", ForbiddenPrologException.Reason.NESTED_ENTITY),
+                Arguments.of("<?xml version=\"1.0\"?><!-- > --><!doctype svg [<!entity a \"&#37;b;\">]>", ForbiddenPrologException.Reason.NESTED_ENTITY)
+        );
+    }
+
+    private static Stream<Arguments> allowedPrologs() {
+        return Stream.of(
+                Arguments.of("<?xml version=\"1.0\"?>\n"),
+                Arguments.of("<!DOCTYPE svg PUBLIC \"-//W3C//DTD SVG 1.1//EN\" \"http://www.w3.org/Graphics/SVG/1.1/DTD/svg11.dtd\">"),
+                Arguments.of("<!DOCTYPE svg [<!ENTITY copy \"&#169;\"><!ENTITY name 'a \"b\" > c'>]>"),
+                Arguments.of("<!DOCTYPE svg [<!-- <!ENTITY a SYSTEM \"a\"> --><?pi <!ENTITY b SYSTEM \"b\">?><!ATTLIST svg a CDATA \"%a;\">]>")
+        );
+    }
+}
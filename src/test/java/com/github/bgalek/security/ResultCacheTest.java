@@ -0,0 +1,51 @@
+package com.github.bgalek.security;
+
+import com.github.bgalek.security.svg.ResultCacheStatistics;
+import com.github.bgalek.security.svg.SvgSecurityValidator;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static com.github.bgalek.security.Fixtures.loadFile;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class ResultCacheTest {
+
+    @Test
+    void shouldServeRepeatedContentFromResultCache() {
+        SvgSecurityValidator validator = SvgSecurityValidator.builder().withResultCache(10, Duration.ofMinutes(1)).build();
+        String evil = loadFile("hacked/with-onclick-attribute.svg");
+        String safe = loadFile("safe/valid1.svg");
+        assertEquals(validator.validate(evil).getOffendingElements(), validator.validate(evil).getOffendingElements());
+        assertFalse(validator.validate(safe).hasViolations());
+        assertFalse(validator.validate(safe.getBytes(StandardCharsets.UTF_8)).hasViolations());
+        assertFalse(validator.validate(safe.getBytes(StandardCharsets.UTF_8)).hasViolations());
+        ResultCacheStatistics statistics = validator.getResultCacheStatistics().orElseThrow(AssertionError::new);
+        assertEquals(2, statistics.getHitCount());
+        assertEquals(3, statistics.getMissCount());
+        assertEquals(3, statistics.getSize());
+    }
+
+    @Test
+    void shouldBoundResultCache() {
+        SvgSecurityValidator validator = SvgSecurityValidator.builder().withResultCache(4, Duration.ofMinutes(1)).build();
+        for (int i = 0; i < 20; i++) {
+            validator.validate("<svg><rect width=\"" + i + "\"/></svg>");
+        }
+        ResultCacheStatistics statistics = validator.getResultCacheStatistics().orElseThrow(AssertionError::new);
+        assertEquals(4, statistics.getSize());
+        assertEquals(16, statistics.getEvictionCount());
+        assertFalse(SvgSecurityValidator.builder().build().getResultCacheStatistics().isPresent());
+    }
+
+    @Test
+    void shouldExpireCachedResults() throws InterruptedException {
+        SvgSecurityValidator validator = SvgSecurityValidator.builder().withResultCache(4, Duration.ofMillis(1)).build();
+        validator.validate("<svg/>");
+        Thread.sleep(10);
+        validator.validate("<svg/>");
+        assertEquals(0, validator.getResultCacheStatistics().orElseThrow(AssertionError::new).getHitCount());
+    }
+}
@@ -0,0 +1,152 @@
+package com.github.bgalek.security;
+
+import com.github.bgalek.security.svg.InvalidXMLSyntaxException;
+import com.github.bgalek.security.svg.SvgSecurityValidator;
+import com.github.bgalek.security.svg.SvgSecurityValidatorBuilder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The single-pass engine must report exactly what the sanitizer reports, so it is compared against
+ * the staged engine on generated markup mixing SVG, HTML, mixed-case and malformed constructs.
+ */
+class SinglePassValidationTest {
+    private static final String[] ELEMENTS = {
+            "svg", "g", "rect", "path", "text", "title", "style", "desc", "foreignObject", "FOREIGNOBJECT", "clipPath",
+            "linearGradient", "feGaussianBlur", "textPath", "image", "use", "a", "font", "span", "img", "input",
+            "li", "ul", "ol", "td", "tr", "table", "thead", "caption", "col", "option", "optgroup", "select", "dd",
+            "p", "div", "form", "body", "html", "head", "frameset", "template", "math", "annotation-xml",
+            "animateMotion", "ANIMATEMotion", "script", "iframe", "xmp", "noscript", "textarea", "textArea", "svg:rect", "foo:bar"};
+    private static final String[] ATTRIBUTES = {
+            "id", "class", "CLASS", "fill", "viewBox", "viewbox", "preserveAspectRatio", "gradientTransform", "width",
+            "d", "x", "title", "tabindex", "name", "type", "style", "href", "xlink:href", "src", "srcset", "onclick",
+            "data-x"};
+    private static final String[] VALUES = {
+            "1", "red", "url(#a)", "https://example.com/a", "HTTPS://EXAMPLE.COM", "javascript:alert(1)",
+            "jav&#97;script:x", "data:x", " a", "#a", "/a", "?a", "<!DOCTYPE svg>", "<b>", "a\"b", "a'b", "x=y", "`",
+            "&amp;", ""};
+    private static final String[] TEXT = {
+            "x", " ", "\n", "&amp;", "&lt;", "<", ">", "a<b", "</", "<!x>", "<!-- c -->", "<!DOCTYPE svg>",
+            "<?xml version=\"1.0\"?>", "<![CDATA[x]]>"};
+
+    @MethodSource("validators")
+    @ParameterizedTest(name = "report what the sanitizer reports {0}")
+    void shouldReportSameResultsInSinglePassForGeneratedInput(String description, Supplier<SvgSecurityValidatorBuilder> builder) {
+        SvgSecurityValidator staged = builder.get().build();
+        SvgSecurityValidator singlePass = builder.get().withSinglePassValidation().build();
+        Random random = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            String input = generateSvg(random);
+            assertEquals(outcome(staged, input), outcome(singlePass, input), input);
+        }
+    }
+
+    @Test
+    void shouldReportSameResultsInSinglePassForGeneratedBytes() {
+        SvgSecurityValidator staged = SvgSecurityValidator.builder().build();
+        SvgSecurityValidator singlePass = SvgSecurityValidator.builder().withSinglePassValidation().build();
+        Random random = new Random(7);
+        for (int i = 0; i < 500; i++) {
+            byte[] input = generateSvg(random).getBytes(StandardCharsets.UTF_8);
+            assertEquals(staged.validate(input).getOffendingElements(), singlePass.validate(input).getOffendingElements(),
+                    new String(input, StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void shouldReportSanitizerNamesInSinglePass() {
+        SvgSecurityValidator validator = SvgSecurityValidator.builder().withSinglePassValidation().build();
+        assertEquals(new HashSet<>(Arrays.asList("td", "tbody", "foreignObject", "table", "tr")),
+                validator.validate(svg("<foreignObject><td>x</td></foreignObject>")).getOffendingElements());
+        assertEquals(new HashSet<>(Arrays.asList("ul", "li")),
+                validator.validate(svg("<li>x</li>")).getOffendingElements());
+        assertEquals(new HashSet<>(Arrays.asList("select", "option")),
+                validator.validate(svg("<option>x</option>")).getOffendingElements());
+        assertEquals(Collections.emptySet(), validator.validate(svg("<image class=<!DOCTYPE svg>")).getOffendingElements());
+    }
+
+    private static Stream<Arguments> validators() {
+        return Stream.of(
+                Arguments.of("by default", (Supplier<SvgSecurityValidatorBuilder>) SvgSecurityValidator::builder),
+                Arguments.of("with syntax validation", (Supplier<SvgSecurityValidatorBuilder>) () -> SvgSecurityValidator.builder().withSyntaxValidation()),
+                Arguments.of("with fail fast", (Supplier<SvgSecurityValidatorBuilder>) () -> SvgSecurityValidator.builder().withFailFast()),
+                Arguments.of("with additional elements", (Supplier<SvgSecurityValidatorBuilder>) () -> SvgSecurityValidator.builder()
+                        .withAdditionalElements(Arrays.asList("a", "li", "td", "option", "FOREIGNOBJECT"))
+                        .withAdditionalAttributes(Arrays.asList("VIEWBOX", "onclick")))
+        );
+    }
+
+    private static String generateSvg(Random random) {
+        StringBuilder svg = new StringBuilder();
+        if (random.nextInt(3) == 0) svg.append("<?xml version=\"1.0\"?>");
+        svg.append("<svg xmlns=\"http://www.w3.org/2000/svg\">");
+        Deque<String> open = new ArrayDeque<>();
+        for (int i = random.nextInt(12); i >= 0; i--) {
+            int kind = random.nextInt(10);
+            if (kind < 5) {
+                String element = pick(random, ELEMENTS);
+                svg.append('<').append(element);
+                for (int a = random.nextInt(3); a > 0; a--) {
+                    svg.append(' ').append(pick(random, ATTRIBUTES));
+                    String value = pick(random, VALUES);
+                    switch (random.nextInt(5)) {
+                        case 0:
+                            break;
+                        case 1:
+                            svg.append('=').append(value.replace(" ", ""));
+                            break;
+                        case 2:
+                            svg.append("='").append(value.replace("'", "")).append('\'');
+                            break;
+                        default:
+                            svg.append("=\"").append(value.replace("\"", "")).append('"');
+                    }
+                }
+                if (random.nextInt(4) == 0) {
+                    svg.append("/>");
+                } else {
+                    svg.append('>');
+                    open.push(element);
+                }
+            } else if (kind < 7 && !open.isEmpty()) {
+                svg.append("</").append(open.pop()).append('>');
+            } else {
+                svg.append(pick(random, TEXT));
+            }
+        }
+        while (!open.isEmpty()) {
+            svg.append("</").append(open.pop()).append('>');
+        }
+        return svg.append("</svg>").toString();
+    }
+
+    private static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private static String svg(String content) {
+        return "<svg xmlns=\"http://www.w3.org/2000/svg\">" + content + "</svg>";
+    }
+
+    private static Object outcome(SvgSecurityValidator validator, String input) {
+        try {
+            return validator.validate(input).getOffendingElements();
+        } catch (InvalidXMLSyntaxException e) {
+            return "invalid syntax";
+        }
+    }
+}
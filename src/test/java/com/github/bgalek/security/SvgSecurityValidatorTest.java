@@ -1,30 +1,66 @@
 package com.github.bgalek.security;
 
 import com.github.bgalek.security.svg.InvalidXMLSyntaxException;
+import com.github.bgalek.security.svg.PrologPolicy;
+import com.github.bgalek.security.svg.ResourceLimitExceededException;
+import com.github.bgalek.security.svg.SanitizationResult;
 import com.github.bgalek.security.svg.SvgSecurityValidator;
+import com.github.bgalek.security.svg.SvgSecurityValidatorBuilder;
+import com.github.bgalek.security.svg.ValidationInstrumentation;
 import com.github.bgalek.security.svg.ValidationResult;
+import com.github.bgalek.security.svg.ValidationStatistics;
+import com.github.bgalek.security.svg.ValidationTimeoutException;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledInNativeImage;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
-import java.io.File;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
+import static com.github.bgalek.security.Fixtures.countReplayFiles;
+import static com.github.bgalek.security.Fixtures.endless;
+import static com.github.bgalek.security.Fixtures.gzip;
+import static com.github.bgalek.security.Fixtures.join;
+import static com.github.bgalek.security.Fixtures.loadFile;
+import static com.github.bgalek.security.Fixtures.outcome;
+import static com.github.bgalek.security.Fixtures.resourcePath;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class SvgSecurityValidatorTest {
-
-    @MethodSource("evilUseCases")
+    @MethodSource("com.github.bgalek.security.Fixtures#evilUseCases")
     @ParameterizedTest(name = "validate {0} svg")
     void shouldDetectXssInFiles(String file, String expectedOffendingElements) {
         ValidationResult detect = SvgSecurityValidator.builder().build().validate(loadFile(file));
@@ -32,7 +68,7 @@ class SvgSecurityValidatorTest {
         assertTrue(detect.hasViolations());
     }
 
-    @MethodSource("safeUseCases")
+    @MethodSource("com.github.bgalek.security.Fixtures#safeUseCases")
     @ParameterizedTest(name = "validate {0} svg")
     void shouldNotDetectAnythingInValidFiles(String file) {
         ValidationResult detect = SvgSecurityValidator.builder().build().validate(loadFile(file));
@@ -40,7 +76,7 @@ class SvgSecurityValidatorTest {
         assertFalse(detect.hasViolations());
     }
 
-    @MethodSource("safeUseCases")
+    @MethodSource("com.github.bgalek.security.Fixtures#safeUseCases")
     @ParameterizedTest(name = "validate {0} svg")
     void shouldNotDetectAnythingInValidFilesUsingBytes(String file) {
         ValidationResult detect = SvgSecurityValidator.builder().build().validate(loadFile(file).getBytes());
@@ -48,7 +84,7 @@ class SvgSecurityValidatorTest {
         assertFalse(detect.hasViolations());
     }
 
-    @MethodSource("brokenUseCases")
+    @MethodSource("com.github.bgalek.security.Fixtures#brokenUseCases")
     @ParameterizedTest(name = "validate {0} svg")
     void shouldNotThrowExceptionWhenInputIsNotValidXml(String file) {
         ValidationResult detect = SvgSecurityValidator.builder().build().validate(loadFile(file));
@@ -56,7 +92,7 @@ class SvgSecurityValidatorTest {
         assertFalse(detect.hasViolations());
     }
 
-    @MethodSource("brokenUseCases")
+    @MethodSource("com.github.bgalek.security.Fixtures#brokenUseCases")
     @ParameterizedTest(name = "validate {0} svg")
     void shouldThrowExceptionWhenInputIsNotValidXmlAndSyntaxValidationIsEnabled(String file) {
         InvalidXMLSyntaxException exception = Assertions.assertThrows(InvalidXMLSyntaxException.class, () ->
@@ -68,7 +104,7 @@ class SvgSecurityValidatorTest {
         assertTrue(exception.getMessage().contains("columnNumber:"));
     }
 
-    @MethodSource("xxeUseCases")
+    @MethodSource("com.github.bgalek.security.Fixtures#xxeUseCases")
     @ParameterizedTest(name = "neutralize {0}")
     void shouldNeutralizeMaliciousEntitiesWhenSyntaxValidationIsEnabled(String file) {
         // The hardened parser must neither resolve external entities (XXE / SSRF / file disclosure)
@@ -82,6 +118,48 @@ class SvgSecurityValidatorTest {
         assertEquals(Collections.emptySet(), detect.getOffendingElements());
     }
 
+    @Test
+    void shouldThrowExceptionWhenUndeclaredEntityIsUsedAndSyntaxValidationIsEnabled() {
+        InvalidXMLSyntaxException exception = Assertions.assertThrows(InvalidXMLSyntaxException.class, () ->
+                SvgSecurityValidator.builder()
+                        .withSyntaxValidation()
+                        .build()
+                        .validate("<svg xmlns=\"http://www.w3.org/2000/svg\"><text>&undeclared;</text></svg>"));
+        assertTrue(exception.getMessage().contains("\"undeclared\" was referenced, but not declared"));
+    }
+
+    @Test
+    void shouldValidateSyntaxConcurrentlyWithSharedValidator() throws Exception {
+        SvgSecurityValidator validator = SvgSecurityValidator.builder().withSyntaxValidation().build();
+        List<String> validFiles = Arrays.asList(loadFile("safe/valid1.svg"), loadFile("safe/valid3.svg"), loadFile("xxe/with-external-entity.svg"));
+        String brokenFile = loadFile("broken/broken.syntax.svg");
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Boolean>> outcomes = new ArrayList<>();
+            for (int i = 0; i < 2000; i++) {
+                boolean broken = i % 10 == 0;
+                String input = broken ? brokenFile : validFiles.get(i % validFiles.size());
+                outcomes.add(executor.submit(() -> {
+                    start.await();
+                    try {
+                        boolean hasViolations = validator.validate(input).hasViolations();
+                        return !broken && !hasViolations;
+                    } catch (InvalidXMLSyntaxException e) {
+                        return broken;
+                    }
+                }));
+            }
+            start.countDown();
+            for (Future<Boolean> outcome : outcomes) {
+                assertTrue(outcome.get(30, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     @Test
     void shouldNotFailWhenUserDefinedAttributesAreUsed() {
         String testFile = loadFile("custom/custom1.svg");
@@ -118,7 +196,378 @@ class SvgSecurityValidatorTest {
         assertFalse(detect.hasViolations());
     }
 
-    @MethodSource("evilUseCases")
+    @MethodSource("com.github.bgalek.security.Fixtures#allFiles")
+    @ParameterizedTest(name = "validate {0} svg with clean input fast path")
+    void shouldReportSameResultsWithCleanInputFastPath(String file) {
+        assertEquals(outcome(SvgSecurityValidator.builder().build(), file),
+                outcome(SvgSecurityValidator.builder().withCleanInputFastPath().build(), file));
+    }
+
+    @Test
+    void shouldReportSameResultsWithCleanInputFastPathForGeneratedInput() {
+        SvgSecurityValidator validator = SvgSecurityValidator.builder().build();
+        SvgSecurityValidator fastPath = SvgSecurityValidator.builder().withCleanInputFastPath().build();
+        Random random = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            String input = generateSvg(random);
+            assertEquals(validator.validate(input).getOffendingElements(), fastPath.validate(input).getOffendingElements(), input);
+        }
+    }
+
+    @Test
+    void shouldValidateAllInInputOrder() {
+        List<String> files = Fixtures.allFiles().map(arguments -> (String) arguments.get()[0]).collect(Collectors.toList());
+        List<String> inputs = files.stream().map(Fixtures::loadFile).collect(Collectors.toList());
+        SvgSecurityValidator validator = SvgSecurityValidator.builder().build();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<ValidationResult> results = validator.validateAll(inputs, executor);
+            assertEquals(inputs.size(), results.size());
+            for (int i = 0; i < inputs.size(); i++) {
+                assertEquals(outcome(validator, files.get(i)), String.join(",", results.get(i).getOffendingElements()));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @MethodSource("com.github.bgalek.security.Fixtures#allFiles")
+    @ParameterizedTest(name = "validate {0} svg asynchronously")
+    @DisabledInNativeImage
+    void shouldReportSameResultsAsynchronously(String file) {
+        SvgSecurityValidator validator = SvgSecurityValidator.builder().withSyntaxValidation().build();
+        assertEquals(outcome(validator, file), outcome(() -> join(validator.validateAsync(loadFile(file)))));
+        assertEquals(outcome(validator, file), outcome(() -> join(validator.validateAsync(loadFile(file).getBytes(StandardCharsets.UTF_8)))));
+        assertEquals(outcome(validator, file), outcome(() -> join(validator.validateAsync(resourcePath(file)))));
+    }
+
+    @Test
+    void shouldRejectAsyncValidationsBeyondMaxPending() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            SvgSecurityValidator validator = SvgSecurityValidator.builder().withMaxPendingValidations(2)
+                    .withAsyncExecutor(task -> executor.execute(() -> {
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        task.run();
+                    }))
+                    .build();
+            String valid = loadFile("safe/valid1.svg");
+            CompletableFuture<ValidationResult> first = validator.validateAsync(valid);
+            CompletableFuture<ValidationResult> second = validator.validateAsync(valid);
+            CompletableFuture<ValidationResult> rejected = validator.validateAsync(valid);
+            ExecutionException exception = Assertions.assertThrows(ExecutionException.class, rejected::get);
+            assertTrue(exception.getCause() instanceof RejectedExecutionException);
+            release.countDown();
+            assertFalse(first.get(10, TimeUnit.SECONDS).hasViolations());
+            assertFalse(second.get(10, TimeUnit.SECONDS).hasViolations());
+            assertFalse(validator.validateAsync(valid).get(10, TimeUnit.SECONDS).hasViolations());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @MethodSource("com.github.bgalek.security.Fixtures#allFiles")
+    @ParameterizedTest(name = "sanitize {0} svg reporting what validation reports")
+    void shouldReportSameResultsWhenSanitizing(String file) {
+        SvgSecurityValidator validator = SvgSecurityValidator.builder().withSyntaxValidation().build();
+        assertEquals(outcome(validator, file), outcome(() -> validator.sanitize(loadFile(file))));
+    }
+
+    @MethodSource("com.github.bgalek.security.Fixtures#evilUseCases")
+    @ParameterizedTest(name = "sanitize {0} svg leaving no violations behind")
+    void shouldRemoveViolationsWhenSanitizing(String file, String expectedOffendingElements) {
+        SvgSecurityValidator validator = SvgSecurityValidator.builder().build();
+        SanitizationResult result = validator.sanitize(loadFile(file));
+        assertEquals(expectedOffendingElements, String.join(",", result.getOffendingElements()));
+        assertFalse(validator.validate(result.getSanitizedContent()).hasViolations());
+        assertFalse(result.getSanitizedContent().toLowerCase().contains("javascript:"));
+    }
+
+    @Test
+    void shouldNotWriteEncodedJavascriptUrls() {
+        SvgSecurityValidator validator = SvgSecurityValidator.builder().build();
+        SanitizationResult result = validator.sanitize("<svg xmlns=\"http://www.w3.org/2000/svg\">"
+                + "<use xlink:href=\"&#106;ava&#9;script:alert(1)\"/><rect width=\"1\"/></svg>");
+        assertEquals(Collections.singleton("xlink:href"), result.getOffendingElements());
+        assertFalse(result.getSanitizedContent().contains("script"));
+        assertTrue(result.getSanitizedContent().contains("rect"));
+    }
+
+    @MethodSource("com.github.bgalek.security.Fixtures#safeUseCases")
+    @ParameterizedTest(name = "sanitize {0} svg to a stream")
+    void shouldWriteSameContentToStreams(String file) throws IOException {
+        SvgSecurityValidator validator = SvgSecurityValidator.builder().build();
+        StringBuilder text = new StringBuilder();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        assertFalse(validator.sanitize(loadFile(file), text).hasViolations());
+        assertFalse(validator.sanitize(loadFile(file), bytes).hasViolations());
+        assertEquals(text.toString(), new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+        assertEquals(validator.sanitize(loadFile(file)).getSanitizedContent(), text.toString());
+    }
+
+    @Test
+    void shouldValidateArchiveEntries() throws IOException {
+        List<String> files = Fixtures.evilUseCases().map(arguments -> (String) arguments.get()[0]).collect(Collectors.toList());
+        Path archive = Files.createTempFile("icons", ".zip");
+        try {
+            try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(archive))) {
+                for (String file : files) {
+                    zip.putNextEntry(new ZipEntry(file));
+                    zip.write(loadFile(file).getBytes(StandardCharsets.UTF_8));
+                }
+                zip.putNextEntry(new ZipEntry("README.txt"));
+            }
+            SvgSecurityValidator validator = SvgSecurityValidator.builder().build();
+            Map<String, ValidationResult> results = validator.validateArchive(archive);
+            assertEquals(files, new ArrayList<>(results.keySet()));
+            for (String file : files) {
+                assertEquals(outcome(validator, file), String.join(",", results.get(file).getOffendingElements()));
+            }
+        } finally {
+            Files.delete(archive);
+        }
+    }
+
+    @MethodSource("pathologicalInputs")
+    @ParameterizedTest(name = "abort on {1} limit {2}")
+    void shouldAbortWhenResourceLimitIsExceeded(String repeated, ResourceLimitExceededException.Limit expectedLimit,
+                                                String description, Supplier<SvgSecurityValidatorBuilder> builder) {
+        SvgSecurityValidator validator = builder.get().withMaxDepth(64).withMaxElements(10_000).withMaxAttributes(10_000)
+                .withMaxAttributeValueLength(4096).build();
+        String input = "<svg xmlns=\"http://www.w3.org/2000/svg\">" + String.join("", Collections.nCopies(20_000, repeated));
+        assertEquals(expectedLimit, Assertions.assertThrows(ResourceLimitExceededException.class,
+                () -> validator.validate(input)).getLimit());
+        assertEquals(expectedLimit, Assertions.assertThrows(ResourceLimitExceededException.class,
+                () -> validator.validate(input.getBytes(StandardCharsets.UTF_8))).getLimit());
+        // an endless stream proves the validation stops early
+        assertEquals(expectedLimit, Assertions.assertThrows(ResourceLimitExceededException.class,
+                () -> validator.validate(endless("<svg xmlns=\"http://www.w3.org/2000/svg\">", repeated))).getLimit());
+    }
+
+    @MethodSource("com.github.bgalek.security.Fixtures#allFiles")
+    @ParameterizedTest(name = "validate gzip compressed {0} svg")
+    void shouldReportSameResultsForCompressedInput(String file) throws IOException {
+        SvgSecurityValidator validator = SvgSecurityValidator.builder().withSyntaxValidation().withMaxCompressionRatio(100).build();
+        byte[] compressed = gzip(loadFile(file).getBytes(StandardCharsets.UTF_8));
+        Path svgz = Files.createTempFile("compressed", ".svgz");
+        try {
+            Files.write(svgz, compressed);
+            assertEquals(outcome(validator, file), outcome(() -> validator.validate(compressed)));
+            assertEquals(outcome(validator, file), outcome(() -> validator.validate(ByteBuffer.allocateDirect(compressed.length).put(compressed).flip())));
+            assertEquals(outcome(validator, file), outcome(() -> validator.validate(new ByteArrayInputStream(compressed))));
+            assertEquals(outcome(validator, file), outcome(() -> validator.validate(svgz)));
+        } finally {
+            Files.delete(svgz);
+        }
+    }
+
+    @Test
+    void shouldAbortDecompressionBombs() throws IOException {
+        StringBuilder svg = new StringBuilder("<svg xmlns=\"http://www.w3.org/2000/svg\">");
+        for (int i = 0; i < 1 << 20; i++) {
+            svg.append("<g/>");
+        }
+        byte[] bomb = gzip(svg.append("</svg>").toString().getBytes(StandardCharsets.UTF_8));
+        SvgSecurityValidator ratioLimited = SvgSecurityValidator.builder().withMaxCompressionRatio(100).build();
+        SvgSecurityValidator sizeLimited = SvgSecurityValidator.builder().withMaxDecompressedSize(1 << 16).build();
+        assertEquals(ResourceLimitExceededException.Limit.COMPRESSION_RATIO,
+                Assertions.assertThrows(ResourceLimitExceededException.class, () -> ratioLimited.validate(bomb)).getLimit());
+        assertEquals(ResourceLimitExceededException.Limit.COMPRESSION_RATIO, Assertions.assertThrows(ResourceLimitExceededException.class,
+                () -> ratioLimited.validate(new ByteArrayInputStream(bomb))).getLimit());
+        assertEquals(ResourceLimitExceededException.Limit.DECOMPRESSED_SIZE,
+                Assertions.assertThrows(ResourceLimitExceededException.class, () -> sizeLimited.validate(bomb)).getLimit());
+        assertFalse(SvgSecurityValidator.builder().build().validate(bomb).hasViolations());
+    }
+
+    @Test
+    void shouldFailOnCorruptCompressedInput() {
+        byte[] corrupt = Arrays.copyOf(gzip("<svg xmlns=\"http://www.w3.org/2000/svg\"></svg>".getBytes(StandardCharsets.UTF_8)), 12);
+        SvgSecurityValidator validator = SvgSecurityValidator.builder().build();
+        Assertions.assertThrows(IOException.class, () -> validator.validate(new ByteArrayInputStream(corrupt)));
+        Assertions.assertThrows(UncheckedIOException.class, () -> validator.validate(corrupt));
+    }
+
+    @Test
+    void shouldAbortReadingStreamAtMaxInputSize() {
+        SvgSecurityValidator validator = SvgSecurityValidator.builder().withSyntaxValidation().withMaxInputSize(1 << 20).build();
+        InputStream input = endless("<svg xmlns=\"http://www.w3.org/2000/svg\">", "<rect width=\"1\" height=\"1\"/>");
+        ResourceLimitExceededException exception = Assertions.assertThrows(ResourceLimitExceededException.class, () -> validator.validate(input));
+        assertEquals(ResourceLimitExceededException.Limit.INPUT_SIZE, exception.getLimit());
+        assertEquals(1 << 20, exception.getMaximum());
+        Assertions.assertThrows(ResourceLimitExceededException.class,
+                () -> validator.validate(new String(new char[(1 << 20) + 1]).replace('\0', ' ')));
+    }
+
+    @MethodSource("com.github.bgalek.security.Fixtures#safeUseCases")
+    @ParameterizedTest(name = "validate {0} svg within limits")
+    void shouldValidateWithinResourceLimits(String file) {
+        SvgSecurityValidator validator = SvgSecurityValidator.builder().withMaxInputSize(1 << 20).withMaxDepth(64)
+                .withMaxElements(100_000).withMaxAttributes(100_000).withMaxAttributeValueLength(1 << 16).build();
+        assertFalse(validator.validate(loadFile(file)).hasViolations());
+    }
+
+    @MethodSource("timeBudgetedValidators")
+    @ParameterizedTest(name = "stop when time budget is exceeded {0}")
+    void shouldStopWhenTimeBudgetIsExceeded(String description, Supplier<SvgSecurityValidatorBuilder> builder) {
+        String input = "<svg xmlns=\"http://www.w3.org/2000/svg\">" + String.join("", Collections.nCopies(100_000, "<rect/>")) + "</svg>";
+        SvgSecurityValidator validator = builder.get().withTimeBudget(Duration.ofNanos(1)).build();
+        ValidationTimeoutException exception = Assertions.assertThrows(ValidationTimeoutException.class, () -> validator.validate(input));
+        assertEquals(Duration.ofNanos(1), exception.getBudget());
+        Assertions.assertThrows(ValidationTimeoutException.class, () -> validator.validate(input.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void shouldStopReadingEndlessStreamWhenTimeBudgetIsExceeded() {
+        SvgSecurityValidator validator = SvgSecurityValidator.builder().withSyntaxValidation().withTimeBudget(Duration.ofMillis(200)).build();
+        long start = System.nanoTime();
+        Assertions.assertThrows(ValidationTimeoutException.class,
+                () -> validator.validate(endless("<svg xmlns=\"http://www.w3.org/2000/svg\">", "<rect/>")));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+    }
+
+    @MethodSource("com.github.bgalek.security.Fixtures#safeUseCases")
+    @ParameterizedTest(name = "validate {0} svg within time budget")
+    void shouldValidateWithinTimeBudget(String file) {
+        SvgSecurityValidator validator = SvgSecurityValidator.builder().withSyntaxValidation().withTimeBudget(Duration.ofMinutes(1)).build();
+        assertFalse(validator.validate(loadFile(file)).hasViolations());
+    }
+
+    @MethodSource("com.github.bgalek.security.Fixtures#evilUseCases")
+    @ParameterizedTest(name = "validate {0} svg in fail-fast mode")
+    void shouldReportFirstViolationInFailFastMode(String file, String expectedOffendingElements) {
+        List<String> offendingElements = Arrays.asList(expectedOffendingElements.split(","));
+        for (SvgSecurityValidatorBuilder builder : Arrays.asList(SvgSecurityValidator.builder(),
+                SvgSecurityValidator.builder().withSinglePassValidation())) {
+            ValidationResult detect = builder.withFailFast().build().validate(loadFile(file));
+            assertEquals(1, detect.getOffendingElements().size());
+            assertTrue(offendingElements.containsAll(detect.getOffendingElements()));
+        }
+    }
+
+    @MethodSource("com.github.bgalek.security.Fixtures#safeUseCases")
+    @ParameterizedTest(name = "validate {0} svg in fail-fast mode")
+    void shouldNotDetectAnythingInValidFilesInFailFastMode(String file) {
+        assertFalse(SvgSecurityValidator.builder().withFailFast().build().validate(loadFile(file)).hasViolations());
+        assertFalse(SvgSecurityValidator.builder().withSyntaxValidation().withSinglePassValidation().withFailFast().build()
+                .validate(loadFile(file)).hasViolations());
+    }
+
+    @Test
+    void shouldStopReadingAtFirstViolationInFailFastMode() throws IOException {
+        SvgSecurityValidator validator = SvgSecurityValidator.builder().withSyntaxValidation().withFailFast().build();
+        ValidationResult detect = validator.validate(endless("<svg xmlns=\"http://www.w3.org/2000/svg\"><foreignObject/>", "<rect/>"));
+        assertEquals(Collections.singleton("foreignObject"), detect.getOffendingElements());
+    }
+
+    @MethodSource("com.github.bgalek.security.Fixtures#allFiles")
+    @ParameterizedTest(name = "validate {0} svg with a warmed up validator")
+    void shouldReportSameResultsWhenWarmedUp(String file) {
+        for (SvgSecurityValidatorBuilder builder : Arrays.asList(SvgSecurityValidator.builder(),
+                SvgSecurityValidator.builder().withSyntaxValidation().withSinglePassValidation(),
+                SvgSecurityValidator.builder().withCleanInputFastPath().withFailFast())) {
+            assertEquals(outcome(builder.build(), file), outcome(builder.buildWarmedUp(2), file));
+        }
+    }
+
+    @Test
+    void shouldNotObserveWarmUp() {
+        ValidationStatistics statistics = new ValidationStatistics();
+        SvgSecurityValidator validator = SvgSecurityValidator.builder().withSyntaxValidation().withInstrumentation(statistics)
+                .withPrologPolicy(PrologPolicy.forbidDoctype()).withResultCache(16, Duration.ofMinutes(1)).buildWarmedUp();
+        assertEquals(0, statistics.getCleanCount() + statistics.getViolatingCount() + statistics.getFailedCount());
+        assertEquals(0, statistics.getStageCount(ValidationInstrumentation.Stage.SYNTAX));
+        assertEquals(0, validator.getResultCacheStatistics().orElseThrow(AssertionError::new).getSize());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> SvgSecurityValidator.builder().buildWarmedUp(0));
+    }
+
+    @MethodSource("dangerousSignatures")
+    @ParameterizedTest(name = "detect {0}")
+    void shouldDetectDangerousSignatures(String input, String expectedOffendingElement) {
+        for (SvgSecurityValidator validator : Arrays.asList(SvgSecurityValidator.builder().build(),
+                SvgSecurityValidator.builder().withSinglePassValidation().build())) {
+            assertEquals(Collections.singleton(expectedOffendingElement), validator.validate(input).getOffendingElements());
+            assertEquals(Collections.singleton(expectedOffendingElement), validator.validate(input.getBytes(StandardCharsets.UTF_8)).getOffendingElements());
+        }
+    }
+
+    @MethodSource("com.github.bgalek.security.Fixtures#allFiles")
+    @ParameterizedTest(name = "validate streamed {0} svg")
+    @DisabledInNativeImage
+    void shouldReportSameResultsForStreamedInput(String file) {
+        for (SvgSecurityValidator validator : Arrays.asList(SvgSecurityValidator.builder().build(),
+                SvgSecurityValidator.builder().withSyntaxValidation().build())) {
+            String expected = outcome(validator, file);
+            assertEquals(expected, outcome(() -> validator.validate(new ByteArrayInputStream(loadFile(file).getBytes(StandardCharsets.UTF_8)))));
+            assertEquals(expected, outcome(() -> validator.validate(resourcePath(file))));
+        }
+    }
+
+    @MethodSource("com.github.bgalek.security.Fixtures#allFiles")
+    @ParameterizedTest(name = "validate {0} svg from bytes")
+    void shouldReportSameResultsForByteInput(String file) {
+        byte[] content = loadFile(file).getBytes(StandardCharsets.UTF_8);
+        byte[] padded = new byte[content.length + 16];
+        System.arraycopy(content, 0, padded, 8, content.length);
+        ByteBuffer direct = ByteBuffer.allocateDirect(content.length);
+        direct.put(content).flip();
+        for (SvgSecurityValidator validator : Arrays.asList(SvgSecurityValidator.builder().build(),
+                SvgSecurityValidator.builder().withSyntaxValidation().build())) {
+            String expected = outcome(validator, file);
+            assertEquals(expected, outcome(() -> validator.validate(padded, 8, content.length)));
+            assertEquals(expected, outcome(() -> validator.validate(direct)));
+            assertEquals(0, direct.position());
+        }
+    }
+
+    @Test
+    void shouldValidateStreamLargerThanReplayBuffer() throws IOException {
+        String element = "<rect x=\"0\" y=\"0\" width=\"10\" height=\"10\" fill=\"#000\"/>\n";
+        int count = 4 * 1024 * 1024 / element.length();
+        SequenceInputStream svg = new SequenceInputStream(Collections.enumeration(Stream.concat(Stream.concat(
+                Stream.of("<svg xmlns=\"http://www.w3.org/2000/svg\">\n"),
+                Collections.nCopies(count, element).stream()),
+                Stream.of("<script>alert(1)</script></svg>"))
+                .map(part -> new ByteArrayInputStream(part.getBytes(StandardCharsets.UTF_8)))
+                .collect(Collectors.toList())));
+        ValidationResult detect = SvgSecurityValidator.builder().withSyntaxValidation().build().validate(svg);
+        assertEquals(Collections.singleton("script"), detect.getOffendingElements());
+    }
+
+    @Test
+    void shouldReplayAmbiguousStreamLargerThanReplayBuffer() throws IOException {
+        String element = "<rect x=\"0\" y=\"0\" width=\"10\" height=\"10\" fill=\"#000\"/>\n";
+        String rects = String.join("", Collections.nCopies(4 * 1024 * 1024 / element.length(), element));
+        byte[] clean = ("<svg xmlns=\"http://www.w3.org/2000/svg\">\n<title/>" + rects + "</svg>").getBytes(StandardCharsets.UTF_8);
+        byte[] evil = ("<svg xmlns=\"http://www.w3.org/2000/svg\">\n<rect x=\"0\" x=\"1\"/>" + rects + "<rect onclick=\"alert(1)\"/></svg>")
+                .getBytes(StandardCharsets.UTF_8);
+        SvgSecurityValidator validator = SvgSecurityValidator.builder().build();
+        long spilled = countReplayFiles();
+        assertFalse(validator.validate(new ByteArrayInputStream(clean)).hasViolations());
+        assertFalse(validator.validate(gzip(clean)).hasViolations());
+        assertFalse(validator.validate(new ByteArrayInputStream(gzip(clean))).hasViolations());
+        assertEquals(Collections.singleton("onclick"), validator.validate(new ByteArrayInputStream(evil)).getOffendingElements());
+        assertEquals(spilled, countReplayFiles());
+    }
+
+    @MethodSource("userDefinedUseCases")
+    @ParameterizedTest(name = "validate {0} svg with user defined elements {1} and attributes {2} in single pass")
+    void shouldNotFailWhenUserDefinedElementsAreUsedInSinglePass(String file, List<String> elements, List<String> attributes) {
+        ValidationResult detect = SvgSecurityValidator.builder()
+                .withAdditionalElements(elements)
+                .withAdditionalAttributes(attributes)
+                .withSinglePassValidation()
+                .build()
+                .validate(loadFile(file));
+        assertEquals(Collections.emptySet(), detect.getOffendingElements());
+        assertFalse(detect.hasViolations());
+    }
+
+    @MethodSource("com.github.bgalek.security.Fixtures#evilUseCases")
     @ParameterizedTest(name = "validate {0} svg")
     void shouldDetectXssInFilesUsingDeprecatedApi(String file, String expectedOffendingElements) {
         ValidationResult detect = new SvgSecurityValidator().validate(loadFile(file));
@@ -126,57 +575,71 @@ class SvgSecurityValidatorTest {
         assertTrue(detect.hasViolations());
     }
 
+    private static String generateSvg(Random random) {
+        String[] fragments = {
+                "<svg xmlns=\"http://www.w3.org/2000/svg\">", "</svg>", "<g>", "</g>", "<rect width=\"10\" height='10'/>",
+                "<path d=\"M0 0L10 10\"/>", "<circle r=1 cx=2>", "<RECT FILL=red>", "<svg:rect/>", "<a href=\"https://example.com\">",
+                "<a>", "</a>", "<font>", "<img src=\"/icon.png\">", "<use href=\"#a\"/>", "<use href=\" https://example.com\"/>",
+                "<image href=\"data:image/png;base64,AA\"/>", "<rect onclick=\"alert(1)\"/>", "<foo>", "<iframe>",
+                "<title>icon</title>", "<style>.a{fill:red}</style>", "<text>a &amp; b &lt; c</text>", "<!-- comment -->",
+                "<!DOCTYPE svg>", "<?xml version=\"1.0\"?>", "<", ">", "\"", "'", "=", "&", " "
+        };
+        StringBuilder svg = new StringBuilder();
+        for (int i = random.nextInt(12); i >= 0; i--) {
+            svg.append(fragments[random.nextInt(fragments.length)]);
+        }
+        return svg.toString();
+    }
 
-    private static Stream<Arguments> safeUseCases() {
-        return Stream.of(
-                Arguments.of("safe/valid1.svg"),
-                Arguments.of("safe/valid2.svg"),
-                Arguments.of("safe/valid3.svg")
+    private static Stream<Arguments> pathologicalInputs() {
+        Stream<Arguments> inputs = Stream.of(
+                Arguments.of("<g>", ResourceLimitExceededException.Limit.DEPTH),
+                Arguments.of("<rect/>", ResourceLimitExceededException.Limit.ELEMENTS),
+                Arguments.of("<g opacity=\"1\" fill=\"red\">x</g>", ResourceLimitExceededException.Limit.ATTRIBUTES),
+                Arguments.of("<path d=\"" + String.join("", Collections.nCopies(2000, "M0 0")) + "\"/>", ResourceLimitExceededException.Limit.ATTRIBUTE_VALUE_LENGTH)
         );
+        return inputs.flatMap(input -> Stream.of(
+                Arguments.of(input.get()[0], input.get()[1], "by default", (Supplier<SvgSecurityValidatorBuilder>) SvgSecurityValidator::builder),
+                Arguments.of(input.get()[0], input.get()[1], "with syntax validation", (Supplier<SvgSecurityValidatorBuilder>) () -> SvgSecurityValidator.builder()
+                        .withSyntaxValidation()),
+                Arguments.of(input.get()[0], input.get()[1], "in single pass", (Supplier<SvgSecurityValidatorBuilder>) () -> SvgSecurityValidator.builder()
+                        .withSinglePassValidation()),
+                Arguments.of(input.get()[0], input.get()[1], "in single pass with syntax validation", (Supplier<SvgSecurityValidatorBuilder>) () -> SvgSecurityValidator.builder()
+                        .withSyntaxValidation().withSinglePassValidation())
+        ));
     }
 
-    private static Stream<Arguments> evilUseCases() {
+    private static Stream<Arguments> timeBudgetedValidators() {
         return Stream.of(
-                Arguments.of("hacked/with-onclick-attribute.svg", "onclick"),
-                Arguments.of("hacked/with-script-tag.svg", "script"),
-                Arguments.of("hacked/with-script-tag-in-styles.svg", "script"),
-                Arguments.of("hacked/with-invalid-script-tag-in-styles.svg", "script"),
-                Arguments.of("hacked/with-css-url-syntax.svg", "style"),
-                Arguments.of("hacked/with-uppercase-css-url-syntax.svg", "style"),
-                Arguments.of("hacked/with-single-quoted-script-tag-in-styles.svg", "script"),
-                Arguments.of("hacked/with-uppercase-script-tag.svg", "script"),
-                Arguments.of("hacked/with-spaced-script-tag.svg", "script"),
-                Arguments.of("hacked/with-onload-attribute.svg", "onload"),
-                Arguments.of("hacked/with-onerror-attribute.svg", "onerror"),
-                Arguments.of("hacked/with-data-uri-in-href.svg", "href"),
-                Arguments.of("hacked/with-xlink-href-javascript-on-image.svg", "xlink:href"),
-                Arguments.of("hacked/with-xlink-href-javascript-on-use.svg", "xlink:href"),
-                Arguments.of("hacked/with-xlink-injection.svg", "script")
+                Arguments.of("by default", (Supplier<SvgSecurityValidatorBuilder>) SvgSecurityValidator::builder),
+                Arguments.of("with syntax validation", (Supplier<SvgSecurityValidatorBuilder>) () -> SvgSecurityValidator.builder().withSyntaxValidation()),
+                Arguments.of("in single pass", (Supplier<SvgSecurityValidatorBuilder>) () -> SvgSecurityValidator.builder().withSinglePassValidation()),
+                Arguments.of("with clean input fast path", (Supplier<SvgSecurityValidatorBuilder>) () -> SvgSecurityValidator.builder()
+                        .withCleanInputFastPath().withMaxDepth(64))
         );
     }
 
-    private static Stream<Arguments> xxeUseCases() {
+    private static Stream<Arguments> userDefinedUseCases() {
         return Stream.of(
-                Arguments.of("xxe/with-external-entity.svg"),
-                Arguments.of("xxe/billion-laughs.svg")
+                Arguments.of("custom/custom1.svg", Collections.emptyList(), Collections.singletonList("horiz-adv-x")),
+                Arguments.of("custom/custom2.svg", Collections.singletonList("cursor"), Collections.emptyList()),
+                Arguments.of("custom/custom3.svg", Arrays.asList("horiz-adv-x", "missing-glyph", "font-face", "font"),
+                        Arrays.asList("horiz-adv-x", "font", "units-per-em"))
         );
     }
 
-    private static Stream<Arguments> brokenUseCases() {
+    private static Stream<Arguments> dangerousSignatures() {
         return Stream.of(
-                Arguments.of("broken/broken.syntax.svg"),
-                Arguments.of("broken/broken.csv.svg"),
-                Arguments.of("broken/broken.png.svg")
+                Arguments.of("<svg><rect style=\"fill: URL( \t'JavaScript:alert(1)')\"/></svg>", "style"),
+                Arguments.of("<svg><rect style=\"fill: uurl(\"\n javascript:alert(1))\"/></svg>", "style"),
+                Arguments.of("<svg>< / SCRIPT></svg>", "script"),
+                Arguments.of("<svg><<script/></svg>", "script"),
+                Arguments.of("<svg><script", "script"),
+                Arguments.of("<svg><script\u2028", "script"),
+                Arguments.of("<svg><image XLINK:HREF = ' javascript:alert(1)'/></svg>", "xlink:href"),
+                Arguments.of("<svg><use xxlink:href=javascript:alert(1)/></svg>", "xlink:href"),
+                Arguments.of("<svg><script>alert(1)</script><rect style=\"fill: url(javascript:alert(1))\"/></svg>", "style"),
+                Arguments.of("<svg><use xlink:href=\"javascript:alert(1)\"/><script>alert(1)</script></svg>", "script")
         );
     }
-
-    private String loadFile(String fileName) {
-        ClassLoader classLoader = ClassLoader.getSystemClassLoader();
-        File file = new File(Objects.requireNonNull(classLoader.getResource(fileName)).getFile());
-        try {
-            return new String(Files.readAllBytes(file.toPath()));
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-    }
 }
@@ -0,0 +1,148 @@
+package com.github.bgalek.security;
+
+import com.github.bgalek.security.svg.InvalidXMLSyntaxException;
+import com.github.bgalek.security.svg.JfrValidationInstrumentation;
+import com.github.bgalek.security.svg.SvgSecurityValidator;
+import com.github.bgalek.security.svg.ValidationInstrumentation;
+import com.github.bgalek.security.svg.ValidationResult;
+import com.github.bgalek.security.svg.ValidationStatistics;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledInNativeImage;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.github.bgalek.security.Fixtures.loadFile;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ValidationInstrumentationTest {
+
+    @Test
+    void shouldReportStagesAndVerdictsToInstrumentation() throws IOException {
+        ValidationStatistics statistics = new ValidationStatistics();
+        SvgSecurityValidator validator = SvgSecurityValidator.builder().withSyntaxValidation().withInstrumentation(statistics).build();
+        String valid = loadFile("safe/valid1.svg");
+        byte[] script = loadFile("hacked/with-script-tag.svg").getBytes(StandardCharsets.UTF_8);
+        validator.validate(valid);
+        validator.validate(new ByteArrayInputStream(script));
+        Assertions.assertThrows(InvalidXMLSyntaxException.class, () -> validator.validate(loadFile("broken/broken.syntax.svg")));
+        assertEquals(1, statistics.getCleanCount());
+        assertEquals(1, statistics.getViolatingCount());
+        assertEquals(1, statistics.getFailedCount());
+        assertEquals(Collections.singletonMap("script", 1L), statistics.getOffendingElementCounts());
+        assertEquals(Collections.singletonMap("InvalidXMLSyntaxException", 1L), statistics.getFailureCounts());
+        assertEquals(valid.length() + script.length + loadFile("broken/broken.syntax.svg").length(), statistics.getInputSize());
+        assertEquals(1, statistics.getStageCount(ValidationInstrumentation.Stage.SYNTAX));
+        assertEquals(1, statistics.getStageCount(ValidationInstrumentation.Stage.SINGLE_PASS));
+        assertEquals(0, statistics.getStageCount(ValidationInstrumentation.Stage.MARKUP_LIMITS));
+        assertTrue(statistics.getValidationNanos() > 0);
+    }
+
+    @Test
+    void shouldValidateBytesInSinglePassOnlyWhenEnabled() {
+        byte[] valid = loadFile("safe/valid1.svg").getBytes(StandardCharsets.UTF_8);
+        ValidationStatistics staged = new ValidationStatistics();
+        SvgSecurityValidator.builder().withSyntaxValidation().withInstrumentation(staged).build().validate(valid);
+        assertEquals(1, staged.getStageCount(ValidationInstrumentation.Stage.SYNTAX));
+        assertEquals(1, staged.getStageCount(ValidationInstrumentation.Stage.SANITIZER));
+        assertEquals(0, staged.getStageCount(ValidationInstrumentation.Stage.SINGLE_PASS));
+        ValidationStatistics singlePass = new ValidationStatistics();
+        SvgSecurityValidator.builder().withSyntaxValidation().withSinglePassValidation().withInstrumentation(singlePass).build().validate(valid);
+        assertEquals(1, singlePass.getStageCount(ValidationInstrumentation.Stage.SINGLE_PASS));
+        assertEquals(0, singlePass.getStageCount(ValidationInstrumentation.Stage.SANITIZER));
+    }
+
+    @Test
+    void shouldPassWhatInstrumentationReturnedOnStartBack() {
+        List<String> calls = Collections.synchronizedList(new ArrayList<>());
+        ValidationInstrumentation tracing = new ValidationInstrumentation() {
+            @Override
+            public Object validationStarted() {
+                return "validation";
+            }
+
+            @Override
+            public Object stageStarted() {
+                return "stage";
+            }
+
+            @Override
+            public void stageCompleted(Object started, Stage stage, long inputSize, long nanos) {
+                calls.add(started + " " + stage + " " + inputSize);
+            }
+
+            @Override
+            public void validationCompleted(Object started, long inputSize, long nanos, ValidationResult result) {
+                calls.add(started + " " + result.getOffendingElements() + " " + inputSize);
+            }
+
+            @Override
+            public void validationFailed(Object started, long inputSize, long nanos, Exception failure) {
+                calls.add(started + " " + failure.getClass().getSimpleName());
+            }
+        };
+        ValidationStatistics statistics = new ValidationStatistics();
+        SvgSecurityValidator validator = SvgSecurityValidator.builder().withSyntaxValidation().withSinglePassValidation()
+                .withInstrumentation(statistics).withInstrumentation(tracing).build();
+        String script = loadFile("hacked/with-script-tag.svg");
+        validator.validate(script);
+        Assertions.assertThrows(InvalidXMLSyntaxException.class, () -> validator.validate(loadFile("broken/broken.syntax.svg")));
+
+        assertEquals("stage SINGLE_PASS " + script.length(), calls.get(0));
+        assertEquals("validation [script] " + script.length(), calls.get(1));
+        assertEquals("validation InvalidXMLSyntaxException", calls.get(calls.size() - 1));
+        assertEquals(1, statistics.getViolatingCount());
+        assertEquals(1, statistics.getFailedCount());
+        assertEquals(statistics.getStageCount(ValidationInstrumentation.Stage.SINGLE_PASS),
+                calls.stream().filter(call -> call.startsWith("stage SINGLE_PASS")).count());
+    }
+
+    @Test
+    @DisabledInNativeImage
+    void shouldRecordFlightRecorderEvents() throws IOException {
+        assertTrue(JfrValidationInstrumentation.isAvailable());
+        ValidationStatistics statistics = new ValidationStatistics();
+        SvgSecurityValidator validator = SvgSecurityValidator.builder().withSyntaxValidation()
+                .withInstrumentation(new JfrValidationInstrumentation()).withInstrumentation(statistics).build();
+        Path dump = Files.createTempFile("validation", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(JfrValidationInstrumentation.VALIDATION_EVENT);
+            recording.enable(JfrValidationInstrumentation.STAGE_EVENT);
+            recording.start();
+            validator.validate(loadFile("hacked/with-script-tag.svg"));
+            recording.stop();
+            recording.dump(dump);
+            List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+            RecordedEvent validation = events.stream()
+                    .filter(event -> event.getEventType().getName().equals(JfrValidationInstrumentation.VALIDATION_EVENT))
+                    .findFirst().orElseThrow(AssertionError::new);
+            assertEquals("violations", validation.getString("verdict"));
+            assertEquals("script", validation.getString("offendingElements"));
+            assertEquals(loadFile("hacked/with-script-tag.svg").length(), validation.getLong("inputSize"));
+            RecordedEvent syntax = events.stream().filter(event -> event.getEventType().getName().equals(JfrValidationInstrumentation.STAGE_EVENT)
+                    && event.getString("stage").equals("SYNTAX")).findFirst().orElseThrow(AssertionError::new);
+            assertEquals(loadFile("hacked/with-script-tag.svg").length(), syntax.getLong("inputSize"));
+            // events span the work they record, stages within their validation
+            assertFalse(syntax.getDuration().isZero());
+            assertFalse(syntax.getStartTime().isBefore(validation.getStartTime()));
+            assertFalse(syntax.getEndTime().isAfter(validation.getEndTime()));
+            assertTrue(validation.getDuration().compareTo(syntax.getDuration()) > 0);
+            assertEquals(1, statistics.getViolatingCount());
+            assertEquals(1, statistics.getStageCount(ValidationInstrumentation.Stage.SYNTAX));
+        } finally {
+            Files.delete(dump);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.github.bgalek.security;
+
+import com.github.bgalek.security.svg.SvgSecurityValidator;
+import com.github.bgalek.security.svg.SvgSecurityValidatorBuilder;
+import com.github.bgalek.security.svg.ValidationInstrumentation;
+import com.github.bgalek.security.svg.ValidationStage;
+import com.github.bgalek.security.svg.ValidationStatistics;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static com.github.bgalek.security.Fixtures.loadFile;
+import static com.github.bgalek.security.Fixtures.outcome;
+import static com.github.bgalek.security.Fixtures.validateInChunks;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ValidationStageTest {
+
+    @MethodSource("validators")
+    @ParameterizedTest(name = "report violations of custom stages {0}")
+    void shouldReportViolationsOfCustomStages(String description, Supplier<SvgSecurityValidatorBuilder> builder) throws IOException {
+        String valid = loadFile("safe/valid1.svg");
+        byte[] content = valid.getBytes(StandardCharsets.UTF_8);
+        SvgSecurityValidator validator = builder.get().withStage(forbiddingAttribute("fill", 500)).build();
+        Set<String> expected = Collections.singleton("fill");
+        assertEquals(expected, validator.validate(valid).getOffendingElements());
+        assertEquals(expected, validator.validate(content).getOffendingElements());
+        assertEquals(expected, validator.validate(new ByteArrayInputStream(content)).getOffendingElements());
+        assertEquals(expected, validator.sanitize(valid).getOffendingElements());
+        assertEquals(expected, validateInChunks(validator, content, 7).getOffendingElements());
+    }
+
+    @MethodSource("validators")
+    @ParameterizedTest(name = "consult stages cheapest first {0}")
+    void shouldConsultStagesCheapestFirst(String description, Supplier<SvgSecurityValidatorBuilder> builder) {
+        String script = loadFile("hacked/with-script-tag.svg");
+        String onclick = loadFile("hacked/with-onclick-attribute.svg");
+        assertEquals(Collections.singleton("fill"), builder.get().withStage(forbiddingAttribute("fill", 10)).build().validate(script).getOffendingElements());
+        assertEquals(Collections.singleton("script"), builder.get().withStage(forbiddingAttribute("fill", 500)).build().validate(script).getOffendingElements());
+        assertEquals(Collections.singleton("fill"), builder.get().withStage(forbiddingAttribute("fill", 500)).build().validate(onclick).getOffendingElements());
+        assertEquals(Collections.singleton("onclick"), builder.get().withStage(forbiddingAttribute("fill", 5000)).build().validate(onclick).getOffendingElements());
+    }
+
+    @Test
+    void shouldNotRunSanitizerWhenCheaperStageDecides() {
+        ValidationStatistics statistics = new ValidationStatistics();
+        String onclick = loadFile("hacked/with-onclick-attribute.svg");
+        SvgSecurityValidator.builder().withInstrumentation(statistics).withStage(forbiddingAttribute("fill", 500)).build()
+                .validate(onclick);
+        assertEquals(0, statistics.getStageCount(ValidationInstrumentation.Stage.SANITIZER));
+        SvgSecurityValidator.builder().withInstrumentation(statistics).withStage(forbiddingAttribute("fill", 5000)).build()
+                .validate(onclick);
+        assertEquals(1, statistics.getStageCount(ValidationInstrumentation.Stage.SANITIZER));
+    }
+
+    @MethodSource("validators")
+    @ParameterizedTest(name = "feed every char to stages once {0}")
+    void shouldFeedEveryCharToStagesOnce(String description, Supplier<SvgSecurityValidatorBuilder> builder) {
+        String valid = loadFile("safe/valid2.svg");
+        List<String> chunks = Collections.synchronizedList(new ArrayList<>());
+        builder.get().withStage(new ValidationStage() {
+            @Override
+            public int cost() {
+                return 0;
+            }
+
+            @Override
+            public Check newCheck() {
+                return new Check() {
+                    @Override
+                    public void characters(CharSequence chunk) {
+                        chunks.add(chunk.toString());
+                    }
+
+                    @Override
+                    public Set<String> getViolations() {
+                        return Collections.emptySet();
+                    }
+                };
+            }
+        }).build().validate(valid);
+        assertEquals(valid, String.join("", chunks));
+    }
+
+    @MethodSource("filesAndValidators")
+    @ParameterizedTest(name = "validate {0} svg with a stage that finds nothing {1}")
+    void shouldReportSameResultsWithCustomStages(String file, String description, Supplier<SvgSecurityValidatorBuilder> builder) {
+        String expected = outcome(builder.get().build(), file);
+        assertEquals(expected, outcome(builder.get().withStage(forbiddingAttribute("unknown", 0)).build(), file));
+    }
+
+    private static Stream<Arguments> validators() {
+        return Stream.of(
+                Arguments.of("by default", (Supplier<SvgSecurityValidatorBuilder>) SvgSecurityValidator::builder),
+                Arguments.of("with syntax validation", (Supplier<SvgSecurityValidatorBuilder>) () -> SvgSecurityValidator.builder().withSyntaxValidation()),
+                Arguments.of("with clean input fast path", (Supplier<SvgSecurityValidatorBuilder>) () -> SvgSecurityValidator.builder().withCleanInputFastPath()),
+                Arguments.of("in single pass", (Supplier<SvgSecurityValidatorBuilder>) () -> SvgSecurityValidator.builder().withSinglePassValidation()),
+                Arguments.of("in single pass with syntax validation", (Supplier<SvgSecurityValidatorBuilder>) () -> SvgSecurityValidator.builder()
+                        .withSyntaxValidation().withSinglePassValidation())
+        );
+    }
+
+    private static Stream<Arguments> filesAndValidators() {
+        return Fixtures.allFiles().flatMap(file -> validators()
+                .map(validator -> Arguments.of(file.get()[0], validator.get()[0], validator.get()[1])));
+    }
+
+    private static ValidationStage forbiddingAttribute(String forbidden, int cost) {
+        return new ValidationStage() {
+            @Override
+            public int cost() {
+                return cost;
+            }
+
+            @Override
+            public Check newCheck() {
+                Set<String> violations = new HashSet<>();
+                return new Check() {
+                    @Override
+                    public void attribute(CharSequence name, CharSequence value) {
+                        if (forbidden.contentEquals(name)) violations.add(forbidden);
+                    }
+
+                    @Override
+                    public Set<String> getViolations() {
+                        return violations;
+                    }
+                };
+            }
+        };
+    }
+}
@@ -0,0 +1,66 @@
+package com.github.bgalek.security;
+
+import com.github.bgalek.security.svg.SvgSecurityValidator;
+import com.github.bgalek.security.svg.ValidationInstrumentation;
+import com.github.bgalek.security.svg.ValidationResult;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs on Java 21 against the multi-release jar, whose classes under {@code META-INF/versions/21}
+ * replace those compiled for Java 8.
+ */
+class VirtualThreadValidationTest {
+    private static final String SVG = "<svg xmlns=\"http://www.w3.org/2000/svg\"><script>alert(1)</script></svg>";
+
+    @Test
+    void shouldValidateAsyncOnVirtualThreadsByDefault() {
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        SvgSecurityValidator validator = SvgSecurityValidator.builder().withInstrumentation(recordingThreads(threads)).build();
+
+        for (int i = 0; i < 16; i++) {
+            ValidationResult result = validator.validateAsync(SVG).join();
+            assertEquals(Set.of("script"), result.getOffendingElements());
+        }
+        assertEquals(16, threads.size());
+        for (Thread thread : threads) {
+            assertTrue(thread.isVirtual(), thread.toString());
+            assertTrue(thread.getName().startsWith("svg-validation-"), thread.getName());
+        }
+    }
+
+    @Test
+    void shouldValidateAsyncOnConfiguredExecutor() {
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "configured"));
+        try {
+            SvgSecurityValidator validator = SvgSecurityValidator.builder().withAsyncExecutor(executor)
+                    .withInstrumentation(recordingThreads(threads)).build();
+            validator.validateAsync(SVG.getBytes(StandardCharsets.UTF_8)).join();
+        } finally {
+            executor.shutdown();
+        }
+        Thread thread = threads.iterator().next();
+        assertFalse(thread.isVirtual());
+        assertEquals("configured", thread.getName());
+    }
+
+    private static ValidationInstrumentation recordingThreads(Set<Thread> threads) {
+        return new ValidationInstrumentation() {
+            @Override
+            public Object validationStarted() {
+                threads.add(Thread.currentThread());
+                return null;
+            }
+        };
+    }
+}